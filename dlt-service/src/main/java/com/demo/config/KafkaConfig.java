@@ -2,13 +2,17 @@ package com.demo.config;
 
 import com.demo.common.Message;
 import com.demo.common.constant.Topics;
+import com.demo.common.serde.UuidKeyDeserializer;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.KafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
@@ -39,6 +43,19 @@ public class KafkaConfig {
         return factory;
     }
 
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, byte[]>> rawKafkaListenerContainerFactory(
+            KafkaProperties kafkaProperties) {
+        // The values are left as bytes: the DLT handlers store them as they are, going by the message headers
+        DefaultKafkaConsumerFactory<String, byte[]> consumerFactory = new DefaultKafkaConsumerFactory<>(
+                kafkaProperties.buildConsumerProperties(null), new UuidKeyDeserializer(), new ByteArrayDeserializer());
+        ConcurrentKafkaListenerContainerFactory<String, byte[]> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        // No further topic to send them to: records that still can't be stored after the retries are logged and skipped
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(5000, 3)));
+        return factory;
+    }
+
     @Bean
     public NewTopic unexpectedExceptionsTopic() {
         return TopicBuilder
@@ -1,6 +1,5 @@
 package com.demo.model;
 
-import com.demo.common.payload.Payload;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.JdbcTypeCode;
@@ -21,10 +20,11 @@ public class DltMessage {
     @GeneratedValue(strategy = GenerationType.UUID)
     private UUID id;
 
-    @Column(name = "message_id", nullable = false)
+    // Null for a record whose message couldn't be read
+    @Column(name = "message_id")
     private UUID messageId;
 
-    @Column(name = "correlation_id", nullable = false)
+    @Column(name = "correlation_id")
     private UUID correlationId;
 
     @Column(nullable = false)
@@ -37,9 +37,13 @@ public class DltMessage {
     @Column(nullable = false)
     private String description;
 
+    // The failed message as received: JSON ones in message, binary ones in binary_message
     @JdbcTypeCode(SqlTypes.JSON)
     @Column(columnDefinition = "jsonb")
-    private Payload payload;
+    private String message;
+
+    @Column(name = "binary_message")
+    private byte[] binaryMessage;
 
     @Column(name = "received_at", nullable = false)
     private Instant receivedAt;
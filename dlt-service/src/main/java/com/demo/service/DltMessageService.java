@@ -1,16 +1,25 @@
 package com.demo.service;
 
 import com.demo.common.Message;
+import com.demo.common.serde.BinaryCodec;
+import com.demo.common.serde.MessageHeaders;
+import com.demo.common.serde.MixedMessageDeserializer;
 import com.demo.model.DltMessage;
 import com.demo.model.DltMessageDTO;
 import com.demo.model.Status;
 import com.demo.repository.DltMessagesRepository;
 import com.demo.utility.Utils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.List;
 
@@ -20,27 +29,69 @@ import java.util.List;
 public class DltMessageService {
 
     private final DltMessagesRepository dltMessagesRepository;
+    private final KafkaProperties kafkaProperties;
+
+    // Only for records published before the message headers were
+    private MixedMessageDeserializer deserializer;
+
+    @PostConstruct
+    public void init() {
+        this.deserializer = new MixedMessageDeserializer();
+        this.deserializer.configure(this.kafkaProperties.buildConsumerProperties(null), false);
+    }
 
     @Transactional
-    public void register(Message message) {
-        // 1. Create the new DLT entity
+    public void register(ConsumerRecord<String, byte[]> record) {
+        // 1. Tell what the record holds from its headers, falling back to reading the message
+        MessageHeaders.Metadata metadata = MessageHeaders.read(record.headers());
+        Class<?> messageClass = metadata != null ? metadata.messageClass() : null;
+        if (metadata == null || metadata.id() == null || metadata.type() == null || messageClass == null) {
+            Message message = this.readMessage(record);
+            if (message != null) {
+                metadata = new MessageHeaders.Metadata(message.getId(), message.getType(), message.getName(),
+                        message.getCorrelationId(), null);
+                messageClass = message.getClass();
+            }
+        }
+        // An unknown message is still stored, retrying it would only fail the same way
+        if (messageClass == null) {
+            log.warn("---> Unknown message at {}-{}@{}, storing it as received <---", record.topic(), record.partition(), record.offset());
+        }
+
+        // 2. Create the new DLT entity
         DltMessage dltMessage = new DltMessage();
 
-        // 2. Map fields from the failed message
-        dltMessage.setMessageId(message.getId());
-        dltMessage.setCorrelationId(message.getCorrelationId());
-        dltMessage.setType(message.getType().name() + ": " + message.getName());
-        dltMessage.setPayload(message.getPayload());
+        // 3. Map the fields of the failed message, which is stored as received
+        dltMessage.setMessageId(metadata != null ? metadata.id() : null);
+        dltMessage.setCorrelationId(metadata != null ? metadata.correlationId() : null);
+        dltMessage.setType((metadata != null && metadata.type() != null ? metadata.type().name() : "UNKNOWN")
+                + ": " + (metadata != null ? metadata.name() : record.topic()));
+        if (BinaryCodec.isBinary(record.value())) {
+            dltMessage.setBinaryMessage(record.value());
+        } else if (record.value() != null) {
+            dltMessage.setMessage(new String(record.value(), StandardCharsets.UTF_8));
+        }
 
-        // 3. Set initial metadata
+        // 4. Set initial metadata
+        String messageName = messageClass != null ? messageClass.getSimpleName() : dltMessage.getType();
         dltMessage.setStatus(Status.UNRESOLVED);
-        dltMessage.setDescription(Utils.determineDescription(message.getClass().getSimpleName()));
+        dltMessage.setDescription(Utils.determineDescription(messageName));
         dltMessage.setReceivedAt(Instant.now());
         dltMessage.setUpdatedAt(Instant.now());
 
-        // 4. Save to DB and log
+        // 5. Save to DB and log
         this.dltMessagesRepository.saveAndFlush(dltMessage);
-        log.info("---> {} was registered <---", message.getClass().getSimpleName());
+        log.info("---> {} was registered <---", messageName);
+    }
+
+    // Null when the record is empty or can't be read either
+    private Message readMessage(ConsumerRecord<String, byte[]> record) {
+        try {
+            return this.deserializer.deserialize(record.topic(), record.headers(), record.value());
+        } catch (SerializationException e) {
+            log.warn("---> Cannot read the message at {}-{}@{} <---", record.topic(), record.partition(), record.offset(), e);
+            return null;
+        }
     }
 
     public List<DltMessageDTO> retrieveAll() {
@@ -50,4 +101,9 @@ public class DltMessageService {
                 .toList();
     }
 
+    @PreDestroy
+    public void destroy() {
+        this.deserializer.close();
+    }
+
 }
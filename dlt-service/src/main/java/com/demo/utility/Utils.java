@@ -96,7 +96,8 @@ public class Utils {
                 serviceName = "shipment-service";
                 break;
             default:
-                throw new IllegalArgumentException("Unknown problematic object name: " + messageName);
+                // Not a message any service is known to consume, e.g. a record that couldn't be read
+                return "No service is known to consume " + messageName + ".";
         }
 
         return String.format(result, serviceName.toUpperCase(), eventOrCommandName);
@@ -0,0 +1,83 @@
+package com.demo.component;
+
+import com.demo.common.Message;
+import com.demo.common.constant.Topics;
+import com.demo.service.ConsumedMessageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Batch listener mode: handles a whole poll in one transaction, passing each record to the matching
+ * @KafkaHandler of the regular listener (which isn't started in this mode), and records the message IDs of the poll at once.
+ * When a record fails, the poll is rolled back and the records before it are applied again on their own;
+ * the failing one goes to the error handler, which retries it and eventually sends it to the DLT.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "kafka.listener.mode", havingValue = "batch")
+public class BatchRecordListener {
+
+    private final RecordDispatcher recordDispatcher;
+    private final ConsumedMessageService consumedMessageService;
+    private final TransactionTemplate transactionTemplate;
+
+    @KafkaListener(topics = Topics.ORDER_EVENTS_TOPIC, containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleOrderEvents(List<ConsumerRecord<String, Message>> records) {
+        this.handle(records);
+    }
+
+    @KafkaListener(topics = Topics.PRODUCT_EVENTS_TOPIC, containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleProductEvents(List<ConsumerRecord<String, Message>> records) {
+        this.handle(records);
+    }
+
+    @KafkaListener(topics = Topics.PAYMENT_EVENTS_TOPIC, containerFactory = "batchKafkaListenerContainerFactory")
+    public void handlePaymentEvents(List<ConsumerRecord<String, Message>> records) {
+        this.handle(records);
+    }
+
+    @KafkaListener(topics = Topics.SHIPMENT_EVENTS_TOPIC, containerFactory = "batchKafkaListenerContainerFactory")
+    public void handleShipmentEvents(List<ConsumerRecord<String, Message>> records) {
+        this.handle(records);
+    }
+
+    private void handle(List<ConsumerRecord<String, Message>> records) {
+        log.info("---> Received a batch of {} records <---", records.size());
+        int[] current = {0};
+        try {
+            // 1. The whole poll in one transaction
+            this.transactionTemplate.executeWithoutResult(status -> this.handle(records, current));
+        } catch (RuntimeException e) {
+            int failed = current[0];
+            log.error("---> Record {} of the batch failed, splitting the batch <---", failed);
+            // 2. Everything was rolled back, so apply the records before the failing one again
+            if (failed > 0) {
+                this.transactionTemplate.executeWithoutResult(status -> this.handle(records.subList(0, failed), new int[1]));
+            }
+            // 3. The error handler commits their offsets, then retries the failing record from there
+            throw new BatchListenerFailedException("Failed to handle record " + failed + " of the batch", e, failed);
+        }
+    }
+
+    private void handle(List<ConsumerRecord<String, Message>> records, int[] current) {
+        // @Transactional handlers join the batch's transaction
+        Set<ConsumerRecord<String, Message>> claimed = new HashSet<>(this.consumedMessageService.claim(records));
+        for (int i = 0; i < records.size(); i++) {
+            current[0] = i;
+            ConsumerRecord<String, Message> record = records.get(i);
+            if (claimed.contains(record)) this.recordDispatcher.dispatch(record);
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+package com.demo.component;
+
+import com.demo.common.cdc.PgOutputDecoder;
+import com.demo.common.cdc.PgOutputMessage;
+import com.demo.common.command.Command;
+import com.demo.service.PublisherService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGProperty;
+import org.postgresql.replication.LogSequenceNumber;
+import org.postgresql.replication.PGReplicationStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Relay engine that streams the inserts into outbox_commands from a logical replication slot (pgoutput) to Kafka,
+ * in commit order, instead of polling the table. Nothing is ever updated, so the outbox is insert-only and is
+ * emptied by dropping partitions (see PartitionManager).
+ * The slot's confirmed position only moves forward once everything up to a commit has been acknowledged by Kafka,
+ * so after a crash the stream resumes from there (at-least-once, like the polling relay).
+ * The slot is never dropped, so the rows it still holds survive a restart; the rows inserted before the table was
+ * published are relayed from the table instead. Requires wal_level=logical. A slot can only be streamed by one
+ * connection, so with several instances one of them relays and the others keep retrying to take over.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "outbox.relay.engine", havingValue = "cdc")
+public class CdcOutboxRelay {
+
+    private static final String TABLE = "outbox_commands";
+
+    private final PublisherService publisherService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Value("${outbox.relay.cdc.slot:outbox_relay}")
+    private String slot;
+
+    @Value("${outbox.relay.cdc.publication:outbox_relay}")
+    private String publication;
+
+    @Value("${outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    @Value("${outbox.relay.cdc.idle-wait-ms:10}")
+    private long idleWaitMs;
+
+    @Value("${outbox.relay.cdc.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    private volatile boolean running;
+    private Thread relayThread;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        this.running = true;
+        this.relayThread = Thread.ofPlatform().name("outbox-cdc-relay").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.running = false;
+        if (this.relayThread != null) this.relayThread.interrupt();
+    }
+
+    private void run() {
+        while (this.running) {
+            try {
+                this.stream();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                if (!this.running) return;
+                log.error("---> Outbox CDC relay stopped, restarting from the last confirmed position <---", e);
+                try {
+                    Thread.sleep(this.reconnectDelayMs);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void stream() throws Exception {
+        Properties properties = new Properties();
+        PGProperty.USER.set(properties, this.username);
+        PGProperty.PASSWORD.set(properties, this.password);
+        PGProperty.ASSUME_MIN_SERVER_VERSION.set(properties, "10");
+        PGProperty.REPLICATION.set(properties, "database");
+        PGProperty.PREFER_QUERY_MODE.set(properties, "simple");
+        try (Connection connection = DriverManager.getConnection(this.url, properties)) {
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            this.prepareSlot(pgConnection);
+            PGReplicationStream stream = pgConnection.getReplicationAPI()
+                    .replicationStream()
+                    .logical()
+                    .withSlotName(this.slot)
+                    .withSlotOption("proto_version", 1)
+                    .withSlotOption("publication_names", this.publication)
+                    .withStatusInterval(10, TimeUnit.SECONDS)
+                    .start();
+            log.info("---> Streaming {} from replication slot {} <---", TABLE, this.slot);
+
+            PgOutputDecoder decoder = new PgOutputDecoder();
+            List<PgOutputMessage.Insert> transaction = new ArrayList<>();
+            List<CompletableFuture<?>> inFlight = new ArrayList<>();
+            LogSequenceNumber lastCommit = null;
+            while (this.running) {
+                ByteBuffer buffer = stream.readPending();
+                if (buffer == null) {
+                    // Caught up: settle what was sent and confirm it before waiting for more
+                    this.confirm(stream, inFlight, lastCommit);
+                    lastCommit = null;
+                    TimeUnit.MILLISECONDS.sleep(this.idleWaitMs);
+                    continue;
+                }
+                switch (decoder.decode(buffer)) {
+                    case PgOutputMessage.Begin begin -> transaction.clear();
+                    case PgOutputMessage.Insert insert when TABLE.equals(insert.relation().name()) -> transaction.add(insert);
+                    case PgOutputMessage.Commit commit -> {
+                        // Sends keep the commit order, the producer keeps it per partition
+                        for (PgOutputMessage.Insert insert : transaction) {
+                            inFlight.add(this.publish(insert.values()));
+                        }
+                        transaction.clear();
+                        lastCommit = LogSequenceNumber.valueOf(commit.endLsn());
+                        if (inFlight.size() >= this.batchSize) {
+                            this.confirm(stream, inFlight, lastCommit);
+                            lastCommit = null;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+    }
+
+    private CompletableFuture<?> publish(Map<String, String> row) throws JsonProcessingException {
+        String topic = row.get("topic");
+        String correlationId = row.get("correlation_id");
+        // Passthrough rows go out as stored, with the command's ID (a reissued command's row has its own, see OutboxCommand)
+        if (row.get("payload") != null) {
+            String id = row.get("command_id") != null ? row.get("command_id") : row.get("id");
+            return this.publisherService.publishRaw(topic, correlationId, PgOutputDecoder.bytea(row.get("payload")), row.get("type_id"), UUID.fromString(id));
+        }
+        Command command = this.objectMapper.readValue(row.get("command"), Command.class);
+        return this.publisherService.publish(topic, correlationId, command);
+    }
+
+    private void confirm(PGReplicationStream stream, List<CompletableFuture<?>> inFlight, LogSequenceNumber lastCommit) throws SQLException {
+        if (lastCommit == null) return;
+        // Throws if any send failed, which restarts the stream from the last confirmed position
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])).join();
+        inFlight.clear();
+        stream.setFlushedLSN(lastCommit);
+        stream.setAppliedLSN(lastCommit);
+        stream.forceUpdateStatus();
+    }
+
+    private void prepareSlot(PGConnection pgConnection) throws SQLException {
+        // 1. The publication before the slot, as pgoutput can't decode changes from before the publication existed
+        Integer publications = this.jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_publication WHERE pubname = ?", Integer.class, this.publication);
+        if (publications == null || publications == 0) {
+            this.jdbcTemplate.execute("CREATE PUBLICATION " + this.publication + " WITH (publish = 'insert', publish_via_partition_root = true)");
+        }
+        // 2. Once created, the slot is kept: the changes it still holds are outbox rows not relayed yet
+        Integer slots = this.jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_replication_slots WHERE slot_name = ?", Integer.class, this.slot);
+        if (slots == null || slots == 0) {
+            pgConnection.getReplicationAPI()
+                    .createReplicationSlot()
+                    .logical()
+                    .withSlotName(this.slot)
+                    .withOutputPlugin("pgoutput")
+                    .make();
+            log.info("---> Created replication slot {} <---", this.slot);
+        }
+        // 3. The publication loses the table whenever the table is recreated (ddl-auto=create-drop)
+        Integer published = this.jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM pg_publication_tables WHERE pubname = ? AND tablename = ?", Integer.class, this.publication, TABLE);
+        if (published == null || published == 0) {
+            this.publishTable();
+        }
+    }
+
+    // The rows inserted before the table was published never reach the slot, so they are relayed from the table.
+    // The lock holds back new inserts until the table is published, and a failed send rolls the publishing back.
+    private void publishTable() {
+        this.transactionTemplate.executeWithoutResult(status -> {
+            this.jdbcTemplate.execute("LOCK TABLE " + TABLE + " IN SHARE MODE");
+            this.jdbcTemplate.execute("ALTER PUBLICATION " + this.publication + " ADD TABLE " + TABLE);
+            List<CompletableFuture<?>> sent = new ArrayList<>();
+            this.jdbcTemplate.query("SELECT * FROM " + TABLE + " WHERE status <> 'PUBLISHED' ORDER BY timestamp", resultSet -> {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                Map<String, String> row = new HashMap<>();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    row.put(metaData.getColumnName(i), resultSet.getString(i));
+                }
+                try {
+                    sent.add(this.publish(row));
+                } catch (JsonProcessingException e) {
+                    throw new IllegalStateException("Cannot read outbox row " + row.get("id"), e);
+                }
+            });
+            CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).join();
+            log.info("---> Published {} to {}, relayed the {} rows it already had <---", TABLE, this.publication, sent.size());
+        });
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.demo.component;
+
+import com.demo.common.Message;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the record being handled at hand on the listener thread, so ConsumedMessageService can read its
+ * topic, partition and offset without every handler passing them along.
+ */
+@Component
+public class ConsumedRecordInterceptor implements RecordInterceptor<String, Message> {
+
+    private static final ThreadLocal<ConsumerRecord<String, Message>> CURRENT = new ThreadLocal<>();
+
+    @Override
+    public ConsumerRecord<String, Message> intercept(ConsumerRecord<String, Message> record, Consumer<String, Message> consumer) {
+        CURRENT.set(record);
+        return record;
+    }
+
+    @Override
+    public void afterRecord(ConsumerRecord<String, Message> record, Consumer<String, Message> consumer) {
+        CURRENT.remove();
+    }
+
+    public ConsumerRecord<String, Message> current() {
+        return CURRENT.get();
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.demo.component;
+
+import com.demo.common.journal.FsyncPolicy;
+import com.demo.common.journal.SegmentedJournal;
+import com.demo.service.PublisherService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Outbox store that appends messages to a memory-mapped file journal instead of inserting rows into outbox_commands,
+ * for when database writes are the bottleneck. A relay thread tails the journal, publishes the records in order
+ * and acknowledges them once Kafka did, so a restart resumes from the first unacknowledged record (at-least-once).
+ * The journal is not part of the database transaction: records are appended once the transaction commits,
+ * so a crash between the commit and the append loses the message. Use the table outbox where that matters.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "outbox.store", havingValue = "journal")
+public class JournalOutbox {
+
+    private final PublisherService publisherService;
+
+    @Value("${outbox.journal.directory:outbox-journal}")
+    private Path directory;
+
+    @Value("${outbox.journal.segment-size:67108864}")
+    private int segmentSize;
+
+    @Value("${outbox.journal.fsync:INTERVAL}")
+    private FsyncPolicy fsyncPolicy;
+
+    @Value("${outbox.journal.fsync-interval-ms:100}")
+    private long fsyncIntervalMs;
+
+    @Value("${outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    @Value("${outbox.retry.base-delay-ms:1000}")
+    private long retryDelayMs;
+
+    private SegmentedJournal journal;
+    private volatile boolean running;
+    private volatile Thread relayThread;
+
+    @PostConstruct
+    public void open() throws IOException {
+        this.journal = new SegmentedJournal(this.directory, this.segmentSize, this.fsyncPolicy, this.fsyncIntervalMs);
+        log.info("---> Opened outbox journal {} at position {} <---", this.directory, this.journal.acknowledgedPosition());
+    }
+
+    public void append(String topic, String correlationId, String typeId, byte[] payload) {
+        try {
+            this.journal.append(encode(topic, correlationId, typeId, payload));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Thread relay = this.relayThread;
+        if (relay != null) LockSupport.unpark(relay);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        this.running = true;
+        this.relayThread = Thread.ofPlatform().name("outbox-journal-relay").daemon().start(this::relay);
+    }
+
+    @Scheduled(fixedDelay = 100) // 100ms
+    public void flush() throws IOException {
+        // Forces the tail of the journal when appends stop, for the INTERVAL fsync policy
+        this.journal.flush();
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        this.running = false;
+        Thread relay = this.relayThread;
+        if (relay != null) {
+            relay.interrupt();
+            relay.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        this.journal.close();
+    }
+
+    private void relay() {
+        long position = this.journal.acknowledgedPosition();
+        while (this.running) {
+            // 1. Send the next batch of records in journal order
+            List<CompletableFuture<?>> sent = new ArrayList<>();
+            long next = position;
+            SegmentedJournal.Entry entry;
+            try {
+                while (sent.size() < this.batchSize && (entry = this.journal.read(next)) != null) {
+                    sent.add(this.send(entry.payload()));
+                    next = entry.nextPosition();
+                }
+            } catch (RuntimeException e) {
+                // e.g. the producer could not fetch the topic metadata in time, the sends so far are still awaited
+                log.error("---> Failed to send outbox journal records <---", e);
+            }
+            if (sent.isEmpty()) {
+                // 2. Nothing new: wait for an append to wake us up
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(this.retryDelayMs));
+                continue;
+            }
+            // 3. Acknowledge the batch once Kafka did, or send it again after a pause
+            try {
+                CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).join();
+                this.journal.acknowledge(next);
+                position = next;
+            } catch (Exception e) {
+                log.error("---> Failed to publish outbox journal records, retrying from position {} <---", position, e);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(this.retryDelayMs));
+            }
+        }
+    }
+
+    private CompletableFuture<?> send(byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            String topic = in.readUTF();
+            String correlationId = in.readUTF();
+            String typeId = in.readUTF();
+            return this.publisherService.publishRaw(topic, correlationId, in.readAllBytes(), typeId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encode(String topic, String correlationId, String typeId, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(topic);
+            out.writeUTF(correlationId);
+            out.writeUTF(typeId);
+            out.write(payload);
+        }
+        return bytes.toByteArray();
+    }
+
+}
@@ -22,7 +22,7 @@ import java.util.UUID;
 @Slf4j
 @Component
 @RequiredArgsConstructor
-@KafkaListener(topics = Topics.ORDER_EVENTS_TOPIC)
+@KafkaListener(topics = Topics.ORDER_EVENTS_TOPIC, autoStartup = "#{'${kafka.listener.mode:record}' == 'record'}")
 public class OrderEventsHandler {
 
     private final OrderStateService orderStateService;
@@ -34,10 +34,9 @@ public class OrderEventsHandler {
     public void handle(OrderCreatedEvent orderCreatedEvent) {
         log.info("---> Received OrderCreatedEvent <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(orderCreatedEvent.getId())) return;
-        // Create the saga state machine
-        this.orderStateService.create(orderCreatedEvent);
-        this.orderStateService.updateStatus(orderCreatedEvent.getCorrelationId(), Status.PENDING_AVAILABILITY_CONFIRMATION);
+        if (this.consumedMessageService.isDuplicate(orderCreatedEvent)) return;
+        // Create the saga state machine (nothing to do if it exists already)
+        if (this.orderStateService.start(orderCreatedEvent, Status.PENDING_AVAILABILITY_CONFIRMATION).isEmpty()) return;
         // Dispatch command for the next step (e.g., to Product Service)
         Command confirmAvailabilityCommand = CommandBuilder.confirmAvailabilityCommand(orderCreatedEvent);
         this.outboxCommandService.create(confirmAvailabilityCommand);
@@ -47,18 +46,18 @@ public class OrderEventsHandler {
     @KafkaHandler
     public void handle(OrderCompletedEvent orderCompletedEvent) {
         log.info("---> Received OrderCompletedEvent <---");
-        if (this.consumedMessageService.isDuplicate(orderCompletedEvent.getId())) return;
+        if (this.consumedMessageService.isDuplicate(orderCompletedEvent)) return;
         UUID correlationId = orderCompletedEvent.getCorrelationId();
-        this.orderStateService.updateStatus(correlationId, Status.COMPLETED);
+        this.orderStateService.updateStatus(correlationId, Status.PENDING_COMPLETION, Status.COMPLETED);
     }
 
     @Transactional
     @KafkaHandler
     public void handle(OrderCancelledEvent orderCancelledEvent) {
         log.info("---> Received OrderCancelledEvent <---");
-        if (this.consumedMessageService.isDuplicate(orderCancelledEvent.getId())) return;
+        if (this.consumedMessageService.isDuplicate(orderCancelledEvent)) return;
         UUID correlationId = orderCancelledEvent.getCorrelationId();
-        this.orderStateService.updateStatus(correlationId, Status.CANCELLED);
+        this.orderStateService.updateStatus(correlationId, Status.PENDING_CANCELLATION, Status.CANCELLED);
     }
 
 }
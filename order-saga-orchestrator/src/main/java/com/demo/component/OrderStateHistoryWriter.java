@@ -0,0 +1,226 @@
+package com.demo.component;
+
+import com.demo.common.payload.Payload;
+import com.demo.model.OrderStateHistory;
+import com.demo.utility.PayloadJson;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the saga history (orders_state_history) with multi-row inserts.
+ * In 'async' mode the saga steps only enqueue their entries once they commit, and a writer thread drains the bounded queue
+ * in batches, so the audit table is off the critical path. Entries still queued when the process dies are lost;
+ * the 'transactional' mode writes them along with the saga state instead (see SagaUnitOfWork).
+ * When the queue is full, the step waits for room rather than dropping its entries.
+ * A batch that keeps failing (max-attempts times) is written one entry at a time, and the entries that still fail
+ * (e.g. a constraint violation) are logged with their content and dropped, so they can't hold up the queue.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderStateHistoryWriter {
+
+    private static final String INSERT = "INSERT INTO orders_state_history (id, order_id, status, payload, timestamp) VALUES ";
+    private static final String ROW = "(?, ?, ?, CAST(? AS jsonb), ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${saga.history.mode:async}")
+    private String mode;
+
+    @Value("${saga.history.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${saga.history.batch-size:500}")
+    private int batchSize;
+
+    @Value("${saga.history.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${saga.history.max-attempts:5}")
+    private int maxAttempts;
+
+    private BlockingQueue<OrderStateHistory> queue;
+    private Timer flushTimer;
+    private Counter queueFullCounter;
+    private Counter droppedCounter;
+    private volatile boolean running;
+    private volatile Thread writerThread;
+
+    @PostConstruct
+    public void init() {
+        this.queue = new ArrayBlockingQueue<>(this.queueCapacity);
+        Gauge.builder("saga.history.queue.depth", this.queue, BlockingQueue::size)
+                .description("History entries waiting for the writer")
+                .register(this.meterRegistry);
+        this.flushTimer = Timer.builder("saga.history.flush")
+                .description("Time taken to insert a batch of history entries")
+                .register(this.meterRegistry);
+        this.queueFullCounter = Counter.builder("saga.history.queue.full")
+                .description("History entries a saga step had to wait to enqueue")
+                .register(this.meterRegistry);
+        this.droppedCounter = Counter.builder("saga.history.dropped")
+                .description("History entries that could not be written")
+                .register(this.meterRegistry);
+        this.start();
+    }
+
+    public boolean isAsync() {
+        return "async".equals(this.mode);
+    }
+
+    private void start() {
+        // Started with the bean rather than on ApplicationReadyEvent, as the listeners may hand entries over before that
+        if (!this.isAsync()) return;
+        this.running = true;
+        this.writerThread = Thread.ofPlatform().name("saga-history-writer").daemon().start(this::drain);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        this.running = false;
+        Thread writer = this.writerThread;
+        if (writer != null) {
+            writer.interrupt();
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        // Whatever is left goes in before the connection pool shuts down
+        List<OrderStateHistory> remaining = new ArrayList<>();
+        this.queue.drainTo(remaining);
+        if (!remaining.isEmpty()) this.write(remaining);
+    }
+
+    /**
+     * Hands the entries of a committed saga step over to the writer thread.
+     */
+    public void enqueue(List<OrderStateHistory> entries) {
+        for (OrderStateHistory entry : entries) {
+            if (this.queue.offer(entry)) continue;
+            // The writer can't keep up: slow the step down instead of losing the audit trail
+            this.queueFullCounter.increment();
+            try {
+                this.queue.put(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("---> Interrupted while enqueuing, lost the {} history entry of order {} <---", entry.getStatus(), entry.getOrderId());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Inserts the entries right away, in the caller's transaction if there is one.
+     */
+    public void write(List<OrderStateHistory> entries) {
+        for (int from = 0; from < entries.size(); from += this.batchSize) {
+            List<OrderStateHistory> batch = entries.subList(from, Math.min(from + this.batchSize, entries.size()));
+            this.flushTimer.record(() -> this.insert(batch));
+        }
+    }
+
+    private void drain() {
+        List<OrderStateHistory> batch = new ArrayList<>(this.batchSize);
+        int attempts = 0;
+        while (this.running) {
+            try {
+                // 1. Wait for the first entry, then take whatever else is queued (up to a batch)
+                if (batch.isEmpty()) {
+                    OrderStateHistory first = this.queue.poll(this.flushIntervalMs, TimeUnit.MILLISECONDS);
+                    if (first == null) continue;
+                    batch.add(first);
+                    this.queue.drainTo(batch, this.batchSize - 1);
+                }
+                // 2. Insert them, keeping the batch for the next attempt if the database is unavailable
+                this.write(batch);
+                batch.clear();
+                attempts = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                // 3. Still failing after max-attempts: most likely an entry the database rejects, so it goes in one entry at a time
+                if (++attempts >= this.maxAttempts) {
+                    log.error("---> Failed to write {} history entries {} times, writing them one by one <---", batch.size(), attempts, e);
+                    this.writeOneByOne(batch);
+                    batch.clear();
+                    attempts = 0;
+                    continue;
+                }
+                log.error("---> Failed to write {} history entries, retrying <---", batch.size(), e);
+                try {
+                    Thread.sleep(this.flushIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        // 4. Stopping: one last attempt for the batch in hand (stop() writes what is still queued)
+        if (batch.isEmpty()) return;
+        try {
+            this.write(batch);
+        } catch (RuntimeException e) {
+            log.error("---> Lost {} history entries <---", batch.size(), e);
+        }
+    }
+
+    private void writeOneByOne(List<OrderStateHistory> entries) {
+        for (OrderStateHistory entry : entries) {
+            try {
+                this.write(List.of(entry));
+            } catch (RuntimeException e) {
+                // The error log is the entry's last record
+                this.droppedCounter.increment();
+                log.error("---> Dropped the {} history entry of order {} ({}, payload {}) <---", entry.getStatus(), entry.getOrderId(),
+                        entry.getTimestamp(), this.describe(entry.getPayload()), e);
+            }
+        }
+    }
+
+    private void insert(List<OrderStateHistory> entries) {
+        List<Object> args = new ArrayList<>(entries.size() * 5);
+        for (OrderStateHistory entry : entries) {
+            args.add(UUID.randomUUID());
+            args.add(entry.getOrderId());
+            args.add(entry.getStatus().name());
+            args.add(this.json(entry.getPayload()));
+            args.add(entry.getTimestamp().atOffset(ZoneOffset.UTC));
+        }
+        this.jdbcTemplate.update(INSERT + String.join(", ", Collections.nCopies(entries.size(), ROW)), args.toArray());
+    }
+
+    // The payload as it would have been written, or its type if that's what failed
+    private String describe(Payload payload) {
+        try {
+            return this.json(payload);
+        } catch (IllegalStateException e) {
+            return payload.getClass().getSimpleName();
+        }
+    }
+
+    private String json(Payload payload) {
+        return PayloadJson.write(this.objectMapper, payload);
+    }
+
+}
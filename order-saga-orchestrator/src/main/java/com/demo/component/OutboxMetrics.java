@@ -0,0 +1,58 @@
+package com.demo.component;
+
+import com.demo.service.OutboxCommandService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Exposes the outbox health through Micrometer (/actuator/metrics).
+ * The values are refreshed on a schedule, so scrapes never hit the database.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "outbox.relay.engine", havingValue = "polling", matchIfMissing = true)
+public class OutboxMetrics {
+
+    private final OutboxCommandService outboxCommandService;
+    private final BrokerCircuitBreaker brokerCircuitBreaker;
+    private final MeterRegistry meterRegistry;
+
+    private volatile long failedRows;
+    private volatile double oldestUnpublishedAgeSeconds;
+
+    @PostConstruct
+    public void registerGauges() {
+        Gauge.builder("outbox.rows.failed", this, metrics -> metrics.failedRows)
+                .description("Outbox rows waiting for a publish retry")
+                .register(this.meterRegistry);
+        Gauge.builder("outbox.oldest.unpublished.age", this, metrics -> metrics.oldestUnpublishedAgeSeconds)
+                .description("Age of the oldest outbox row not published yet")
+                .baseUnit("seconds")
+                .register(this.meterRegistry);
+        Gauge.builder("outbox.circuit.open", this.brokerCircuitBreaker, breaker -> breaker.getState() == BrokerCircuitBreaker.State.CLOSED ? 0 : 1)
+                .description("1 while the outbox relay is paused because the Kafka cluster is unreachable")
+                .register(this.meterRegistry);
+    }
+
+    @Scheduled(fixedDelay = 10000) // 10 sec
+    public void refresh() {
+        try {
+            this.failedRows = this.outboxCommandService.countFailed();
+            Instant oldest = this.outboxCommandService.findOldestUnpublished();
+            this.oldestUnpublishedAgeSeconds = oldest == null ? 0 : Duration.between(oldest, Instant.now()).toMillis() / 1000.0;
+        } catch (RuntimeException e) {
+            log.error("---> Failed to refresh outbox metrics <---", e);
+        }
+    }
+
+}
@@ -18,12 +18,13 @@ import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Optional;
 import java.util.UUID;
 
 @Component
 @Slf4j
 @RequiredArgsConstructor
-@KafkaListener(topics = Topics.PAYMENT_EVENTS_TOPIC)
+@KafkaListener(topics = Topics.PAYMENT_EVENTS_TOPIC, autoStartup = "#{'${kafka.listener.mode:record}' == 'record'}")
 public class PaymentEventsHandler {
 
     private final OrderStateService orderStateService;
@@ -35,16 +36,16 @@ public class PaymentEventsHandler {
     public void handle(PaymentSucceededEvent paymentSucceededEvent) {
         log.info("---> Received PaymentSucceededEvent <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(paymentSucceededEvent.getId())) return;
+        if (this.consumedMessageService.isDuplicate(paymentSucceededEvent)) return;
 
         UUID correlationId = paymentSucceededEvent.getCorrelationId();
 
         // Persist the payment details to the order state
-        this.orderStateService.reflectPayment(correlationId, paymentSucceededEvent.getPayload());
-        OrderState orderState = this.orderStateService.retrieve(correlationId);
+        Optional<OrderState> orderState = this.orderStateService.reflectPayment(correlationId, paymentSucceededEvent.getPayload(), Status.PAYMENT_SUCCEEDED);
+        if (orderState.isEmpty()) return;
 
         // Create command for the next step (e.g., tell Product service to decrement stock)
-        Command updateProductsCommand = CommandBuilder.updateProductsCommand(correlationId, orderState);
+        Command updateProductsCommand = CommandBuilder.updateProductsCommand(correlationId, orderState.get());
         this.outboxCommandService.create(updateProductsCommand);
     }
 
@@ -53,20 +54,18 @@ public class PaymentEventsHandler {
     public void handle(PaymentFailedEvent paymentFailedEvent) {
         log.info("---> Received PaymentFailedEvent <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(paymentFailedEvent.getId())) return;
+        if (this.consumedMessageService.isDuplicate(paymentFailedEvent)) return;
 
         UUID correlationId = paymentFailedEvent.getCorrelationId();
         PaymentFailedPayload paymentFailedPayload = (PaymentFailedPayload) paymentFailedEvent.getPayload();
         String reason = paymentFailedPayload.getReason();
 
-        // Persist the failure details to the order state
-        this.orderStateService.reflectPayment(correlationId, paymentFailedEvent.getPayload());
-
-        // Update status to begin compensation
-        OrderState orderState = this.orderStateService.updateStatus(correlationId, Status.PENDING_SHIPMENT_CANCELLATION);
+        // Persist the failure details to the order state and update status to begin compensation
+        Optional<OrderState> orderState = this.orderStateService.reflectPayment(correlationId, paymentFailedEvent.getPayload(), Status.PENDING_SHIPMENT_CANCELLATION);
+        if (orderState.isEmpty()) return;
 
         // Create compensating command to roll back the saga
-        Command cancelOrderCommand = CommandBuilder.cancelShipmentCommand(correlationId, orderState, reason);
+        Command cancelOrderCommand = CommandBuilder.cancelShipmentCommand(correlationId, orderState.get(), reason);
         this.outboxCommandService.create(cancelOrderCommand);
     }
 
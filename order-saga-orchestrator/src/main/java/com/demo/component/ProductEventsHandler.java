@@ -18,12 +18,13 @@ import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Optional;
 import java.util.UUID;
 
 @Component
 @Slf4j
 @RequiredArgsConstructor
-@KafkaListener(topics = Topics.PRODUCT_EVENTS_TOPIC)
+@KafkaListener(topics = Topics.PRODUCT_EVENTS_TOPIC, autoStartup = "#{'${kafka.listener.mode:record}' == 'record'}")
 public class ProductEventsHandler {
 
     private final OrderStateService orderStateService;
@@ -35,17 +36,16 @@ public class ProductEventsHandler {
     public void handle(AvailabilityConfirmedEvent availabilityConfirmedEvent) {
         log.info("---> Received AvailabilityConfirmedEvent <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(availabilityConfirmedEvent.getId())) return;
+        if (this.consumedMessageService.isDuplicate(availabilityConfirmedEvent)) return;
 
         UUID correlationId = availabilityConfirmedEvent.getCorrelationId();
-        // Note: The first update to AVAILABILITY_CONFIRMED is immediately overwritten.
-        this.orderStateService.updateStatus(correlationId, Status.AVAILABILITY_CONFIRMED);
-
-        // Update state and get the latest version
-        OrderState orderState = this.orderStateService.updateStatus(correlationId, Status.PENDING_SHIPMENT_ARRANGEMENT);
+        // Update state and get the latest version (AVAILABILITY_CONFIRMED is only passed through, it shows in the history)
+        Optional<OrderState> orderState = this.orderStateService.updateStatus(correlationId,
+                Status.PENDING_AVAILABILITY_CONFIRMATION, Status.AVAILABILITY_CONFIRMED, Status.PENDING_SHIPMENT_ARRANGEMENT);
+        if (orderState.isEmpty()) return;
 
         // Create command for the next step (Shipping)
-        Command arrangeShipmentCommand = CommandBuilder.arrangeShipmentCommand(correlationId, orderState);
+        Command arrangeShipmentCommand = CommandBuilder.arrangeShipmentCommand(correlationId, orderState.get());
         this.outboxCommandService.create(arrangeShipmentCommand);
     }
 
@@ -54,10 +54,10 @@ public class ProductEventsHandler {
     public void handle(ProductsUpdatedEvent productsUpdatedEvent) {
         log.info("---> Received ProductsUpdatedEvent <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(productsUpdatedEvent.getId())) return;
+        if (this.consumedMessageService.isDuplicate(productsUpdatedEvent)) return;
 
         UUID correlationId = productsUpdatedEvent.getCorrelationId();
-        this.orderStateService.updateStatus(correlationId, Status.PENDING_COMPLETION);
+        if (this.orderStateService.updateStatus(correlationId, Status.PAYMENT_SUCCEEDED, Status.PENDING_COMPLETION).isEmpty()) return;
 
         // Create command to finalize the order
         Command completeOrderCommand = CommandBuilder.completeOrderCommand(correlationId);
@@ -69,18 +69,16 @@ public class ProductEventsHandler {
     public void handle(ProductsShortageEvent productsShortageEvent) {
         log.info("---> Received ProductsShortageEvent <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(productsShortageEvent.getId())) return;
+        if (this.consumedMessageService.isDuplicate(productsShortageEvent)) return;
 
         UUID correlationId = productsShortageEvent.getCorrelationId();
 
-        // Record the failure reason and payload
-        OrderState orderState = this.orderStateService.reflectProductsUnavailability(correlationId, productsShortageEvent.getPayload());
-
-        // Set state to begin compensating
-        this.orderStateService.updateStatus(correlationId, Status.PENDING_CANCELLATION);
+        // Record the failure reason and payload, and set state to begin compensating
+        Optional<OrderState> orderState = this.orderStateService.reflectProductsUnavailability(correlationId, productsShortageEvent.getPayload(), Status.PENDING_CANCELLATION);
+        if (orderState.isEmpty()) return;
 
         // Create compensating command
-        Command cancelOrderCommand = CommandBuilder.cancelOrderCommand(correlationId, orderState.getFailureReason());
+        Command cancelOrderCommand = CommandBuilder.cancelOrderCommand(correlationId, orderState.get().getFailureReason());
         this.outboxCommandService.create(cancelOrderCommand);
     }
 
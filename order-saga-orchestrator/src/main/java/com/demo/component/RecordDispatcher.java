@@ -0,0 +1,75 @@
+package com.demo.component;
+
+import com.demo.common.Message;
+import com.demo.common.serde.MessageHeaders;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.annotation.KafkaHandler;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Passes a record to the matching @KafkaHandler of the regular listener, for the listener modes that
+ * don't go through it (batch and parallel, where the regular listener isn't started).
+ */
+@Component
+@RequiredArgsConstructor
+public class RecordDispatcher {
+
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(RecordDispatcher.class);
+
+    private final OrderEventsHandler orderEventsHandler;
+    private final ProductEventsHandler productEventsHandler;
+    private final PaymentEventsHandler paymentEventsHandler;
+    private final ShippingEventsHandler shippingEventsHandler;
+
+    // Message type -> the @KafkaHandler method taking it
+    private final Map<Class<?>, Handler> handlers = new HashMap<>();
+
+    private record Handler(Object bean, Method method) {}
+
+    @PostConstruct
+    public void init() {
+        this.register(this.orderEventsHandler);
+        this.register(this.productEventsHandler);
+        this.register(this.paymentEventsHandler);
+        this.register(this.shippingEventsHandler);
+    }
+
+    private void register(Object bean) {
+        // Methods of the actual class, invoked on the bean itself so @Transactional still applies
+        ReflectionUtils.doWithMethods(AopUtils.getTargetClass(bean), method -> {
+            ReflectionUtils.makeAccessible(method); // the handler class may be package-private
+            this.handlers.put(method.getParameterTypes()[0], new Handler(bean, method));
+        }, method -> method.isAnnotationPresent(KafkaHandler.class));
+    }
+
+    public void dispatch(ConsumerRecord<String, Message> record) {
+        // Could not be deserialized: fail it, like the regular listener does
+        DeserializationException deserializationException = SerializationUtils.getExceptionFromHeader(
+                record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+        if (deserializationException != null) throw deserializationException;
+        // Picked by the message-name header the producer stamped; only records published before it go by the payload type
+        Handler handler = this.handlers.get(messageClass(record));
+        if (handler == null) {
+            throw new IllegalStateException("No handler for " + record.value().getClass().getSimpleName());
+        }
+        ReflectionUtils.invokeMethod(handler.method(), handler.bean(), record.value());
+    }
+
+    private static Class<?> messageClass(ConsumerRecord<String, Message> record) {
+        MessageHeaders.Metadata metadata = MessageHeaders.read(record.headers());
+        Class<?> messageClass = metadata != null ? metadata.messageClass() : null;
+        return messageClass != null ? messageClass : record.value().getClass();
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.demo.component;
+
+import com.demo.common.command.Command;
+import com.demo.model.OrderState;
+import com.demo.model.Status;
+import com.demo.service.OrderStateService;
+import com.demo.service.OutboxCommandService;
+import com.demo.utility.CommandBuilder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * What a saga does when it waited too long for a step's event (see SagaDeadlineScheduler): the step's command is issued again,
+ * or the saga starts the compensation it would on the step's failure event. Either way through the outbox, in the same
+ * transaction as the DEADLINE_EXPIRED step. A command issued again keeps its first ID (see CommandBuilder), so the consumers
+ * drop it if the first one got through and was only slow to answer.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SagaDeadlineHandler {
+
+    // The statuses a saga waits in for another service's event
+    public static final Set<Status> WAITING = EnumSet.of(Status.PENDING_AVAILABILITY_CONFIRMATION, Status.PENDING_SHIPMENT_ARRANGEMENT,
+            Status.PENDING_PAYMENT, Status.PAYMENT_SUCCEEDED, Status.PENDING_COMPLETION, Status.PENDING_SHIPMENT_CANCELLATION,
+            Status.PENDING_CANCELLATION);
+
+    // The status each compensable step's failure leads to. The others can only be retried: a payment that timed out
+    // may still go through, and cancelling the order then would leave it charged, with no refund step to undo the charge
+    private static final Map<Status, Status> COMPENSATIONS = Map.of(
+            Status.PENDING_AVAILABILITY_CONFIRMATION, Status.PENDING_CANCELLATION,
+            Status.PENDING_SHIPMENT_ARRANGEMENT, Status.PENDING_CANCELLATION);
+
+    private final OrderStateService orderStateService;
+    private final OutboxCommandService outboxCommandService;
+
+    public static boolean isCompensable(Status status) {
+        return COMPENSATIONS.containsKey(status);
+    }
+
+    /**
+     * Retries the step the saga waits in, or compensates it, if the saga is still where (and as of when) the deadline found it.
+     * @param version the saga's version when the deadline was set
+     * @return the saga's state after it, empty if the saga moved on
+     * @throws OptimisticLockingFailureException if the saga went through another step in the meantime (e.g. the same deadline,
+     * handled by another instance)
+     */
+    @Transactional
+    public Optional<OrderState> handle(UUID orderId, Status status, long version, boolean retry) {
+        // 1. Record the expiry: the saga stays where it is for a retry (keeping its failure reason), or moves to its compensation
+        Status next = retry ? status : COMPENSATIONS.get(status);
+        if (next == null) throw new IllegalArgumentException(status + " can't be compensated");
+        String reason = retry ? null : "Timed out in " + status;
+        Optional<OrderState> expired = this.orderStateService.expire(orderId, status, next, reason);
+        if (expired.isEmpty()) return expired;
+        OrderState orderState = expired.get();
+        if (orderState.getVersion() != version + 1) {
+            throw new OptimisticLockingFailureException("Order " + orderId + " changed since version " + version);
+        }
+        // 2. Dispatch the command of the status the saga waits in now: the step's again, or the compensation's
+        Command command = this.command(orderId, orderState);
+        if (retry) {
+            this.outboxCommandService.reissue(command);
+        } else {
+            this.outboxCommandService.create(command);
+        }
+        log.warn("---> Order {} timed out in {}, {} <---", orderId, status, retry ? "retrying" : "moved to " + next);
+        return expired;
+    }
+
+    private Command command(UUID orderId, OrderState orderState) {
+        return switch (orderState.getStatus()) {
+            case PENDING_AVAILABILITY_CONFIRMATION -> CommandBuilder.confirmAvailabilityCommand(orderId, orderState);
+            case PENDING_SHIPMENT_ARRANGEMENT -> CommandBuilder.arrangeShipmentCommand(orderId, orderState);
+            case PENDING_PAYMENT -> CommandBuilder.processPaymentCommand(orderId, orderState);
+            case PAYMENT_SUCCEEDED -> CommandBuilder.updateProductsCommand(orderId, orderState);
+            case PENDING_COMPLETION -> CommandBuilder.completeOrderCommand(orderId);
+            case PENDING_SHIPMENT_CANCELLATION -> CommandBuilder.cancelShipmentCommand(orderId, orderState, orderState.getFailureReason());
+            case PENDING_CANCELLATION -> CommandBuilder.cancelOrderCommand(orderId, orderState.getFailureReason());
+            default -> throw new IllegalArgumentException("No command to wait on in " + orderState.getStatus());
+        };
+    }
+
+}
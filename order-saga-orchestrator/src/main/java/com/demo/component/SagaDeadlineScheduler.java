@@ -0,0 +1,262 @@
+package com.demo.component;
+
+import com.demo.common.timer.TimingWheel;
+import com.demo.component.SagaStateCache.PartitionsAssigned;
+import com.demo.component.SagaStateCache.PartitionsRevoked;
+import com.demo.model.OrderState;
+import com.demo.model.Status;
+import com.demo.model.WaitingSaga;
+import com.demo.service.OrderStateService.StepTaken;
+import com.demo.service.SagaStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Gives every saga waiting for another service's event a deadline, kept in memory in a hierarchical timing wheel
+ * (O(1) to set, cancel and expire, however many sagas are waiting): one per saga, replaced by each step it takes.
+ * When it expires, SagaDeadlineHandler issues the step's command again, up to 'retries' times, then compensates the step
+ * (or gives up on it, if it can't be compensated).
+ * An instance only keeps the deadlines of the sagas whose events it consumes (see SagaStateCache): when partitions are assigned
+ * to it (on startup, or taken over from an instance that left), their sagas' deadlines are rebuilt from the saga store with
+ * a keyset scan, each counted from the saga's last step, and retry counts start over; when partitions are revoked,
+ * their deadlines are dropped. A deadline may still expire on two instances around a rebalance: the first one to handle it
+ * moves the saga on, and the other finds it moved (its version changed).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "saga.deadline.enabled", havingValue = "true", matchIfMissing = true)
+public class SagaDeadlineScheduler {
+
+    private final SagaStore sagaStore;
+    private final SagaDeadlineHandler sagaDeadlineHandler;
+    private final SagaStateCache sagaStateCache;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${saga.deadline.timeout-ms:300000}")
+    private long timeoutMs;
+
+    @Value("${saga.deadline.retries:2}")
+    private int retries;
+
+    @Value("${saga.deadline.tick-ms:1000}")
+    private long tickMs;
+
+    @Value("${saga.deadline.wheel-size:512}")
+    private int wheelSize;
+
+    @Value("${saga.deadline.rebuild-batch-size:1000}")
+    private int rebuildBatchSize;
+
+    @Value("${saga.deadline.failure-delay-ms:10000}")
+    private long failureDelayMs;
+
+    // The live deadline of each waiting saga; guards the wheel as well, which isn't thread-safe
+    private final Map<UUID, TimingWheel.Timeout<Deadline>> timeouts = new HashMap<>();
+    private TimingWheel<Deadline> wheel;
+
+    private Counter expiredCounter;
+    private volatile boolean stopped;
+    private Thread tickerThread;
+
+    /**
+     * A saga's deadline in a status, set at the given version, and the number of times the step has been retried.
+     */
+    private record Deadline(UUID orderId, Status status, long version, int attempt) {}
+
+    @PostConstruct
+    public void init() {
+        // Created with the bean, as steps may be taken before the application is ready
+        this.wheel = new TimingWheel<>(this.tickMs, this.wheelSize, System.currentTimeMillis());
+        Gauge.builder("saga.deadline.pending", this, SagaDeadlineScheduler::pending)
+                .description("Sagas waiting for a step's event, with a deadline set")
+                .register(this.meterRegistry);
+        this.expiredCounter = Counter.builder("saga.deadline.expired")
+                .description("Saga deadlines that expired")
+                .register(this.meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        this.tickerThread = Thread.ofPlatform().name("saga-deadline-ticker").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.stopped = true;
+        if (this.tickerThread != null) this.tickerThread.interrupt();
+    }
+
+    /**
+     * Replaces the saga's deadline once its step commits: a new one if it waits for an event in its new status, none otherwise.
+     * The steps of an expired deadline are left to the ticker, which knows the attempt.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onStep(StepTaken stepTaken) {
+        if (stepTaken.reached() == Status.DEADLINE_EXPIRED) return;
+        OrderState orderState = stepTaken.orderState();
+        if (SagaDeadlineHandler.WAITING.contains(orderState.getStatus())) {
+            Deadline deadline = new Deadline(orderState.getOrderId(), orderState.getStatus(), orderState.getVersion(), 0);
+            this.schedule(deadline, orderState.getUpdatedAt().toEpochMilli() + this.timeoutMs, true);
+        } else {
+            this.cancel(orderState.getOrderId());
+        }
+    }
+
+    /**
+     * Rebuilds the deadlines of the sagas of the partitions this instance now holds, off the consumer thread:
+     * the keyset scan reads every waiting saga.
+     */
+    @EventListener
+    public void onPartitionsAssigned(PartitionsAssigned partitionsAssigned) {
+        Thread.ofPlatform().name("saga-deadline-rebuild").daemon().start(() -> {
+            try {
+                this.rebuild(partitionsAssigned.partitions());
+            } catch (RuntimeException e) {
+                log.error("---> Failed to rebuild the saga deadlines of partitions {}, only the sagas stepping from now on have one <---",
+                        partitionsAssigned.partitions(), e);
+            }
+        });
+    }
+
+    /**
+     * Drops the deadlines of the sagas of the partitions this instance no longer holds: their new owner rebuilds them.
+     */
+    @EventListener
+    public void onPartitionsRevoked(PartitionsRevoked partitionsRevoked) {
+        int dropped = 0;
+        synchronized (this.timeouts) {
+            Iterator<Map.Entry<UUID, TimingWheel.Timeout<Deadline>>> iterator = this.timeouts.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<UUID, TimingWheel.Timeout<Deadline>> entry = iterator.next();
+                if (!partitionsRevoked.partitions().contains(this.sagaStateCache.partitionOf(entry.getKey()))) continue;
+                this.wheel.cancel(entry.getValue());
+                iterator.remove();
+                dropped++;
+            }
+        }
+        log.info("---> Dropped the deadlines of {} sagas of partitions {} <---", dropped, partitionsRevoked.partitions());
+    }
+
+    /**
+     * Handles the deadlines expired by the given time (package-private for the tests, which tick the wheel themselves).
+     */
+    void tick(long now) {
+        for (Deadline deadline : this.expired(now)) this.handle(deadline, now);
+    }
+
+    private int pending() {
+        synchronized (this.timeouts) {
+            return this.timeouts.size();
+        }
+    }
+
+    private void run() {
+        // Expire the deadlines, a tick at a time
+        while (!this.stopped) {
+            try {
+                Thread.sleep(this.tickMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            this.tick(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Package-private for the tests, which rebuild on their own thread.
+     */
+    void rebuild(Set<Integer> partitions) {
+        // Keyset pages in order ID order, starting below the lowest UUID
+        UUID after = new UUID(0, 0);
+        int rebuilt = 0;
+        List<WaitingSaga> page;
+        do {
+            page = this.sagaStore.findWaiting(SagaDeadlineHandler.WAITING, after, this.rebuildBatchSize);
+            for (WaitingSaga waitingSaga : page) {
+                if (!partitions.contains(this.sagaStateCache.partitionOf(waitingSaga.orderId()))) continue;
+                Deadline deadline = new Deadline(waitingSaga.orderId(), waitingSaga.status(), waitingSaga.version(), 0);
+                // A saga that stepped since it was read has its deadline set already
+                this.schedule(deadline, waitingSaga.since().toEpochMilli() + this.timeoutMs, false);
+                rebuilt++;
+            }
+            if (!page.isEmpty()) after = page.get(page.size() - 1).orderId();
+        } while (page.size() == this.rebuildBatchSize && !this.stopped);
+        log.info("---> Rebuilt the deadlines of {} waiting sagas of partitions {} <---", rebuilt, partitions);
+    }
+
+    private List<Deadline> expired(long now) {
+        synchronized (this.timeouts) {
+            List<Deadline> expired = this.wheel.advance(now);
+            for (Deadline deadline : expired) this.timeouts.remove(deadline.orderId());
+            return expired;
+        }
+    }
+
+    private void handle(Deadline deadline, long now) {
+        this.expiredCounter.increment();
+        // 1. Retry the step while it has attempts left, then compensate it
+        boolean retry = deadline.attempt() < this.retries;
+        if (!retry && !SagaDeadlineHandler.isCompensable(deadline.status())) {
+            log.error("---> Order {} is stuck in {} after {} retries, giving up on it <---", deadline.orderId(), deadline.status(), this.retries);
+            return;
+        }
+        try {
+            Optional<OrderState> orderState = this.sagaDeadlineHandler.handle(deadline.orderId(), deadline.status(), deadline.version(), retry);
+            // 2. The saga waits again: in the same status for the next attempt, or in its compensation's from the first one
+            orderState.ifPresent(state -> this.schedule(new Deadline(state.getOrderId(), state.getStatus(), state.getVersion(),
+                    retry ? deadline.attempt() + 1 : 0), state.getUpdatedAt().toEpochMilli() + this.timeoutMs, true));
+        } catch (OptimisticLockingFailureException e) {
+            // The saga stepped in the meantime, so it has a new deadline (or none)
+            log.debug("---> Order {} moved on from {} before its deadline was handled <---", deadline.orderId(), deadline.status());
+        } catch (RuntimeException e) {
+            // Most likely the database: try again later, unless the saga has stepped since
+            log.error("---> Failed to handle the deadline of order {} in {}, trying again in {} ms <---",
+                    deadline.orderId(), deadline.status(), this.failureDelayMs, e);
+            this.schedule(deadline, now + this.failureDelayMs, false);
+        }
+    }
+
+    private void schedule(Deadline deadline, long at, boolean replace) {
+        // The saga's partition may have been revoked meanwhile (e.g. during a rebuild): its new owner has the deadline
+        if (!this.sagaStateCache.isAssigned(deadline.orderId())) return;
+        synchronized (this.timeouts) {
+            TimingWheel.Timeout<Deadline> current = this.timeouts.get(deadline.orderId());
+            if (current != null) {
+                if (!replace) return;
+                this.wheel.cancel(current);
+            }
+            this.timeouts.put(deadline.orderId(), this.wheel.schedule(deadline, at));
+        }
+    }
+
+    private void cancel(UUID orderId) {
+        synchronized (this.timeouts) {
+            TimingWheel.Timeout<Deadline> current = this.timeouts.remove(orderId);
+            if (current != null) this.wheel.cancel(current);
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.demo.component;
+
+import com.demo.common.constant.Topics;
+import com.demo.common.serde.UuidKeySerializer;
+import com.demo.model.OrderState;
+import com.demo.model.Status;
+import com.demo.repository.OrderStateRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory copy of the running sagas whose events this instance consumes. Every event of an order has the order ID as key,
+ * so it lands on the same partition number of each event topic (they have the same partition count):
+ * the sagas of a partition are loaded when it is assigned (in keyset pages, off the consumer thread: until then its sagas
+ * are read from orders_state) and evicted when it is revoked.
+ * States are put once the step's transaction commits, so the cache never runs ahead of orders_state;
+ * the writes based on it are guarded by the cached version in case it lags behind.
+ * The partition numbers this instance gains and loses are published as PartitionsAssigned and PartitionsRevoked events
+ * (see SagaDeadlineScheduler), whether the cache is enabled or not.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SagaStateCache implements ConsumerAwareRebalanceListener {
+
+    private static final Set<String> EVENT_TOPICS = Set.of(Topics.ORDER_EVENTS_TOPIC, Topics.PRODUCT_EVENTS_TOPIC,
+            Topics.PAYMENT_EVENTS_TOPIC, Topics.SHIPMENT_EVENTS_TOPIC);
+
+    // No more events come for these
+    private static final Set<Status> FINAL_STATUSES = EnumSet.of(Status.COMPLETED, Status.CANCELLED);
+    private static final List<String> FINAL_STATUS_NAMES = FINAL_STATUSES.stream().map(Status::name).toList();
+
+    private final OrderStateRepository orderStateRepository;
+    private final KafkaProperties kafkaProperties;
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    // Partition number -> the event topics this instance holds that partition of
+    private final Map<Integer, Set<String>> assigned = new ConcurrentHashMap<>();
+
+    // Partition number -> its running sagas, by order ID
+    private final Map<Integer, Map<UUID, OrderState>> sagas = new ConcurrentHashMap<>();
+
+    @Value("${saga.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${saga.store:state}")
+    private String store;
+
+    @Value("${saga.cache.load-batch-size:1000}")
+    private int loadBatchSize;
+
+    // One load at a time, in assignment order
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("saga-cache-loader").daemon().factory());
+
+    private volatile int partitionCount;
+
+    // The keys have to be hashed the way the producers serialize them
+    private Serializer<String> keySerializer;
+
+    /**
+     * Partition numbers this instance now holds of at least one event topic, having held none of them before.
+     */
+    public record PartitionsAssigned(Set<Integer> partitions) {}
+
+    /**
+     * Partition numbers this instance no longer holds of any event topic.
+     */
+    public record PartitionsRevoked(Set<Integer> partitions) {}
+
+    @PostConstruct
+    public void init() {
+        this.keySerializer = UuidKeySerializer.class.equals(this.kafkaProperties.getProducer().getKeySerializer())
+                ? new UuidKeySerializer() : new StringSerializer();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.loader.shutdownNow();
+    }
+
+    /**
+     * @return null if the saga isn't cached
+     */
+    public OrderState get(UUID orderId) {
+        Map<UUID, OrderState> partition = this.partition(orderId);
+        return partition != null ? partition.get(orderId) : null;
+    }
+
+    /**
+     * Whether the saga's events come to this instance: false until its partitions are assigned.
+     */
+    public boolean isAssigned(UUID orderId) {
+        return this.partitionCount != 0 && this.assigned.containsKey(this.partitionOf(orderId));
+    }
+
+    public void evict(UUID orderId) {
+        Map<UUID, OrderState> partition = this.partition(orderId);
+        if (partition != null) partition.remove(orderId);
+    }
+
+    /**
+     * Only for states that are committed (see SagaUnitOfWork), so the cache never runs ahead of orders_state.
+     */
+    public void put(OrderState orderState) {
+        Map<UUID, OrderState> partition = this.partition(orderState.getOrderId());
+        if (partition == null) return; // Not (or no longer) a partition of this instance
+        if (FINAL_STATUSES.contains(orderState.getStatus())) {
+            partition.remove(orderState.getOrderId());
+        } else {
+            partition.put(orderState.getOrderId(), orderState);
+        }
+    }
+
+    private Map<UUID, OrderState> partition(UUID orderId) {
+        if (!this.enabled || this.partitionCount == 0) return null;
+        return this.sagas.get(this.partitionOf(orderId));
+    }
+
+    /**
+     * The partition number of the saga's events; only once partitions have been assigned (the partition count is known).
+     */
+    public int partitionOf(UUID orderId) {
+        // What the producers' default partitioner picks for the key
+        byte[] key = this.keySerializer.serialize(null, orderId.toString());
+        return Utils.toPositive(Utils.murmur2(key)) % this.partitionCount;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Set<Integer> added = new HashSet<>();
+        for (TopicPartition topicPartition : partitions) {
+            if (!EVENT_TOPICS.contains(topicPartition.topic())) continue;
+            if (this.partitionCount == 0) this.partitionCount = consumer.partitionsFor(topicPartition.topic()).size();
+            Set<String> topics = this.assigned.computeIfAbsent(topicPartition.partition(), partition -> ConcurrentHashMap.newKeySet());
+            if (topics.isEmpty()) added.add(topicPartition.partition());
+            topics.add(topicPartition.topic());
+        }
+        if (added.isEmpty()) return;
+        // 1. Load the sagas of the partitions, without holding up the poll loop (which would exceed max.poll.interval.ms on a large backlog)
+        if (this.enabled) {
+            added.forEach(partition -> this.sagas.putIfAbsent(partition, new ConcurrentHashMap<>()));
+            this.loader.execute(() -> this.load(added));
+        }
+        // 2. Then let the others know
+        this.applicationEventPublisher.publishEvent(new PartitionsAssigned(added));
+    }
+
+    @Override
+    public void onPartitionsRevoked(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        Set<Integer> removed = new HashSet<>();
+        for (TopicPartition topicPartition : partitions) {
+            if (!EVENT_TOPICS.contains(topicPartition.topic())) continue;
+            // Another instance may move these sagas on from now on
+            Map<UUID, OrderState> evicted = this.sagas.remove(topicPartition.partition());
+            Set<String> topics = this.assigned.get(topicPartition.partition());
+            if (topics != null) topics.remove(topicPartition.topic());
+            if (topics != null && !topics.isEmpty()) {
+                // Still holding the partition of other event topics: start over empty
+                this.sagas.put(topicPartition.partition(), new ConcurrentHashMap<>());
+            } else {
+                this.assigned.remove(topicPartition.partition());
+                removed.add(topicPartition.partition());
+            }
+            if (evicted != null && !evicted.isEmpty()) {
+                log.info("---> Evicted {} sagas of partition {} <---", evicted.size(), topicPartition.partition());
+            }
+        }
+        if (!removed.isEmpty()) this.applicationEventPublisher.publishEvent(new PartitionsRevoked(removed));
+    }
+
+    private void load(Set<Integer> partitions) {
+        // The event-sourced store has no orders_state rows to load: its sagas are cached as they move on
+        if ("events".equals(this.store)) return;
+        // Keyset pages in order ID order, starting below the lowest UUID; only a page is held at a time
+        UUID after = new UUID(0, 0);
+        int loaded = 0;
+        List<OrderState> page;
+        try {
+            do {
+                page = this.orderStateRepository.findRunning(FINAL_STATUS_NAMES, after, this.loadBatchSize);
+                for (OrderState orderState : page) {
+                    int partitionNumber = this.partitionOf(orderState.getOrderId());
+                    Map<UUID, OrderState> partition = this.sagas.get(partitionNumber);
+                    if (partition == null || !partitions.contains(partitionNumber)) continue;
+                    // A state put by a step that committed meanwhile is newer
+                    if (partition.putIfAbsent(orderState.getOrderId(), orderState) == null) loaded++;
+                }
+                if (!page.isEmpty()) after = page.get(page.size() - 1).getOrderId();
+                // Stop early once the partitions are all revoked
+            } while (page.size() == this.loadBatchSize && partitions.stream().anyMatch(this.sagas::containsKey));
+        } catch (RuntimeException e) {
+            log.error("---> Failed to load the sagas of partitions {}, the cache fills up as they step <---", partitions, e);
+            return;
+        }
+        log.info("---> Loaded {} sagas of partitions {} <---", loaded, partitions);
+    }
+
+}
@@ -18,12 +18,13 @@ import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Optional;
 import java.util.UUID;
 
 @Component
 @Slf4j
 @RequiredArgsConstructor
-@KafkaListener(topics = Topics.SHIPMENT_EVENTS_TOPIC)
+@KafkaListener(topics = Topics.SHIPMENT_EVENTS_TOPIC, autoStartup = "#{'${kafka.listener.mode:record}' == 'record'}")
 public class ShippingEventsHandler {
 
     private final OrderStateService orderStateService;
@@ -35,18 +36,16 @@ public class ShippingEventsHandler {
     public void handle(ShipmentArrangedEvent shipmentArrangedEvent) {
         log.info("---> Received ShipmentArrangedEvent <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(shipmentArrangedEvent.getId())) return;
+        if (this.consumedMessageService.isDuplicate(shipmentArrangedEvent)) return;
 
         UUID correlationId = shipmentArrangedEvent.getCorrelationId();
 
-        // Record the shipment details
-        this.orderStateService.reflectShipmentArrangement(correlationId, shipmentArrangedEvent.getPayload());
-
-        // Update state and get the latest version
-        OrderState orderState = this.orderStateService.updateStatus(correlationId, Status.PENDING_PAYMENT);
+        // Record the shipment details, update state and get the latest version
+        Optional<OrderState> orderState = this.orderStateService.reflectShipmentArrangement(correlationId, shipmentArrangedEvent.getPayload(), Status.PENDING_PAYMENT);
+        if (orderState.isEmpty()) return;
 
         // Create command for the next step (Payment)
-        Command processPaymentCommand = CommandBuilder.processPaymentCommand(correlationId, orderState);
+        Command processPaymentCommand = CommandBuilder.processPaymentCommand(correlationId, orderState.get());
         this.outboxCommandService.create(processPaymentCommand);
     }
 
@@ -55,18 +54,16 @@ public class ShippingEventsHandler {
     public void handle(ArrangementFailedEvent arrangementFailedEvent) {
         log.info("---> Received ArrangementFailedEvent <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(arrangementFailedEvent.getId())) return;
+        if (this.consumedMessageService.isDuplicate(arrangementFailedEvent)) return;
 
         UUID correlationId = arrangementFailedEvent.getCorrelationId();
 
-        // Record the failure details
-        this.orderStateService.reflectShipmentArrangementFailure(correlationId, arrangementFailedEvent.getPayload());
-
-        // Set state to begin compensating
-        OrderState orderState = this.orderStateService.updateStatus(correlationId, Status.PENDING_CANCELLATION);
+        // Record the failure details and set state to begin compensating
+        Optional<OrderState> orderState = this.orderStateService.reflectShipmentArrangementFailure(correlationId, arrangementFailedEvent.getPayload(), Status.PENDING_CANCELLATION);
+        if (orderState.isEmpty()) return;
 
         // Create compensating command
-        Command cancelOrderCommand = CommandBuilder.cancelOrderCommand(correlationId, orderState.getFailureReason());
+        Command cancelOrderCommand = CommandBuilder.cancelOrderCommand(correlationId, orderState.get().getFailureReason());
         this.outboxCommandService.create(cancelOrderCommand);
     }
 
@@ -75,15 +72,16 @@ public class ShippingEventsHandler {
     public void handle(ShipmentCancelledEvent shipmentCancelledEvent) {
         log.info("---> Received ShipmentCancelledEvent <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(shipmentCancelledEvent.getId())) return;
+        if (this.consumedMessageService.isDuplicate(shipmentCancelledEvent)) return;
 
         UUID correlationId = shipmentCancelledEvent.getCorrelationId();
 
         // Update state and get reason (if any)
-        OrderState orderState = this.orderStateService.updateStatus(correlationId, Status.PENDING_CANCELLATION);
+        Optional<OrderState> orderState = this.orderStateService.updateStatus(correlationId, Status.PENDING_SHIPMENT_CANCELLATION, Status.PENDING_CANCELLATION);
+        if (orderState.isEmpty()) return;
 
         // Create the final compensating command to cancel the order
-        Command cancelOrderCommand = CommandBuilder.cancelOrderCommand(correlationId, orderState.getFailureReason());
+        Command cancelOrderCommand = CommandBuilder.cancelOrderCommand(correlationId, orderState.get().getFailureReason());
         this.outboxCommandService.create(cancelOrderCommand);
     }
 
@@ -1,5 +1,10 @@
 package com.demo.model;
 import com.demo.common.payload.Payload;
+import com.demo.common.payload.order.OrderCreatedPayload;
+import com.demo.common.payload.payment.PaymentFailedPayload;
+import com.demo.common.payload.payment.PaymentSucceededPayload;
+import com.demo.common.payload.shipment.ArrangementFailedPayload;
+import com.demo.common.payload.shipment.ShipmentArrangedPayload;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.JdbcTypeCode;
@@ -52,4 +57,29 @@ public class OrderState {
     @Column(name = "updated_at", nullable = false)
     private Instant updatedAt;
 
+    // Bumped by every transition, so a cached copy can tell whether it is still current
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    public static OrderState start(UUID orderId, Status status, Payload orderCreatedPayload, Instant now) {
+        return new OrderState(orderId, status, orderCreatedPayload, null, null, null, null, null, now, now, 0L);
+    }
+
+    /**
+     * The state after a step to the next status, which recorded the event's details: the payload goes to its column
+     * (payloads the state doesn't keep, e.g. ProductsShortagePayload, only leave their failure reason) and a null leaves it untouched.
+     * The version is the caller's to set.
+     */
+    public OrderState next(Status next, Payload payload, String failureReason, Instant now) {
+        return new OrderState(this.orderId, next,
+                payload instanceof OrderCreatedPayload ? payload : this.orderCreatedPayload,
+                payload instanceof PaymentSucceededPayload ? payload : this.paymentSucceededPayload,
+                payload instanceof PaymentFailedPayload ? payload : this.paymentFailedPayload,
+                payload instanceof ShipmentArrangedPayload ? payload : this.shipmentArrangedPayload,
+                payload instanceof ArrangementFailedPayload ? payload : this.arrangementFailedPayload,
+                failureReason != null ? failureReason : this.failureReason,
+                this.createdAt, now, null);
+    }
+
 }
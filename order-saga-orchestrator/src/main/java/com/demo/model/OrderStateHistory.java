@@ -41,4 +41,11 @@ public class OrderStateHistory {
         this.timestamp = Instant.now();
     }
 
+    public OrderStateHistory(UUID orderId, Status status, Payload payload) {
+        this.orderId = orderId;
+        this.status = status;
+        this.payload = payload;
+        this.timestamp = Instant.now();
+    }
+
 }
@@ -0,0 +1,68 @@
+package com.demo.model;
+
+import com.demo.common.payload.Payload;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * One step of a saga, in the event-sourced store (saga.store=events): appended, never updated.
+ * Sequence 0 starts the saga; the state is the fold of its events (see EventSourcedSagaStore.fold()),
+ * and the events double as the saga's history.
+ */
+@Entity
+@Table(name = "saga_events", indexes = @Index(name = "idx_saga_events_order_id_sequence", columnList = "order_id, sequence DESC"))
+@IdClass(SagaEvent.Key.class)
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class SagaEvent {
+
+    @Id
+    @Column(name = "order_id", nullable = false, updatable = false)
+    private UUID orderId;
+
+    // The version of the state after this step; two writers can't append the same one
+    @Id
+    @Column(name = "sequence", nullable = false, updatable = false)
+    private Long sequence;
+
+    // The status the event led to, as in orders_state_history (e.g. PAYMENT_SUCCEEDED)
+    @Column(name = "status", length = 50, nullable = false, updatable = false)
+    @Enumerated(EnumType.STRING)
+    private Status status;
+
+    // The status the saga waits in after this step (e.g. PENDING_COMPLETION)
+    @Column(name = "next_status", length = 50, nullable = false, updatable = false)
+    @Enumerated(EnumType.STRING)
+    private Status nextStatus;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "payload", columnDefinition = "jsonb", updatable = false)
+    private Payload payload;
+
+    @Column(name = "failure_reason", updatable = false)
+    private String failureReason;
+
+    @Column(name = "timestamp", nullable = false, updatable = false)
+    private Instant timestamp;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+
+        private UUID orderId;
+        private Long sequence;
+
+    }
+
+}
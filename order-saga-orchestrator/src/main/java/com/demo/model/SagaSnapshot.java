@@ -0,0 +1,39 @@
+package com.demo.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The folded state of a saga as of one of its events, so a rebuild only has to fold the events after it.
+ * Only the latest snapshot per saga is kept.
+ */
+@Entity
+@Table(name = "saga_snapshots")
+@Getter
+@NoArgsConstructor
+public class SagaSnapshot {
+
+    @Id
+    @Column(name = "order_id", nullable = false, updatable = false)
+    private UUID orderId;
+
+    @Column(name = "sequence", nullable = false)
+    private Long sequence;
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "state", columnDefinition = "jsonb", nullable = false)
+    private OrderState state;
+
+    @Column(name = "timestamp", nullable = false)
+    private Instant timestamp;
+
+}
@@ -20,6 +20,8 @@ public enum Status {
     COMPLETED,
     PENDING_CANCELLATION,
     CANCELLED,
+    // The saga waited too long for a step's event (see SagaDeadlineScheduler)
+    DEADLINE_EXPIRED,
 
     // Payment Statuses
     PENDING_PAYMENT,
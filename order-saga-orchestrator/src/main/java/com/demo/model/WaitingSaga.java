@@ -0,0 +1,9 @@
+package com.demo.model;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A saga waiting for an event, as of its last step (see SagaStore.findWaiting).
+ */
+public record WaitingSaga(UUID orderId, Status status, long version, Instant since) {}
@@ -2,9 +2,88 @@ package com.demo.repository;
 
 import com.demo.model.OrderState;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface OrderStateRepository extends JpaRepository<OrderState, UUID> {}
\ No newline at end of file
+public interface OrderStateRepository extends JpaRepository<OrderState, UUID> {
+
+    // Starts the saga, unless it has been started already (returns nothing then)
+    @Query(value = """
+            INSERT INTO orders_state (order_id, status, order_created_payload, created_at, updated_at, version)
+            VALUES (:orderId, :status, CAST(:orderCreatedPayload AS jsonb), :now, :now, 0)
+            ON CONFLICT (order_id) DO NOTHING
+            RETURNING *
+            """, nativeQuery = true)
+    Optional<OrderState> insertIfAbsent(@Param("orderId") UUID orderId,
+                                        @Param("status") String status,
+                                        @Param("orderCreatedPayload") String orderCreatedPayload,
+                                        @Param("now") Instant now);
+
+    // Moves the saga on only if it is still in the expected status, recording the given details (null ones are left untouched).
+    // Returns nothing if the saga is elsewhere, i.e. the event is a duplicate or out of order
+    @Query(value = """
+            UPDATE orders_state SET
+                status = :next,
+                payment_succeeded_payload = COALESCE(CAST(:paymentSucceededPayload AS jsonb), payment_succeeded_payload),
+                payment_failed_payload = COALESCE(CAST(:paymentFailedPayload AS jsonb), payment_failed_payload),
+                shipment_arranged_payload = COALESCE(CAST(:shipmentArrangedPayload AS jsonb), shipment_arranged_payload),
+                arrangement_failed_payload = COALESCE(CAST(:arrangementFailedPayload AS jsonb), arrangement_failed_payload),
+                failure_reason = COALESCE(:failureReason, failure_reason),
+                updated_at = :now,
+                version = version + 1
+            WHERE order_id = :orderId AND status = :expected
+            RETURNING *
+            """, nativeQuery = true)
+    Optional<OrderState> transition(@Param("orderId") UUID orderId,
+                                    @Param("expected") String expected,
+                                    @Param("next") String next,
+                                    @Param("paymentSucceededPayload") String paymentSucceededPayload,
+                                    @Param("paymentFailedPayload") String paymentFailedPayload,
+                                    @Param("shipmentArrangedPayload") String shipmentArrangedPayload,
+                                    @Param("arrangementFailedPayload") String arrangementFailedPayload,
+                                    @Param("failureReason") String failureReason,
+                                    @Param("now") Instant now);
+
+    // Same as transition, for a saga whose state is known (cached): guarded by the version it was cached at, and without reading the row back.
+    // Returns 0 if the row changed since
+    @Modifying
+    @Query(value = """
+            UPDATE orders_state SET
+                status = :next,
+                payment_succeeded_payload = COALESCE(CAST(:paymentSucceededPayload AS jsonb), payment_succeeded_payload),
+                payment_failed_payload = COALESCE(CAST(:paymentFailedPayload AS jsonb), payment_failed_payload),
+                shipment_arranged_payload = COALESCE(CAST(:shipmentArrangedPayload AS jsonb), shipment_arranged_payload),
+                arrangement_failed_payload = COALESCE(CAST(:arrangementFailedPayload AS jsonb), arrangement_failed_payload),
+                failure_reason = COALESCE(:failureReason, failure_reason),
+                updated_at = :now,
+                version = version + 1
+            WHERE order_id = :orderId AND version = :version
+            """, nativeQuery = true)
+    int update(@Param("orderId") UUID orderId,
+               @Param("version") long version,
+               @Param("next") String next,
+               @Param("paymentSucceededPayload") String paymentSucceededPayload,
+               @Param("paymentFailedPayload") String paymentFailedPayload,
+               @Param("shipmentArrangedPayload") String shipmentArrangedPayload,
+               @Param("arrangementFailedPayload") String arrangementFailedPayload,
+               @Param("failureReason") String failureReason,
+               @Param("now") Instant now);
+
+    // Keyset page of the sagas still waiting for events: the first ones (up to limit) whose order ID comes after the given one
+    @Query(value = """
+            SELECT * FROM orders_state
+            WHERE status NOT IN (:finalStatuses) AND order_id > :after
+            ORDER BY order_id LIMIT :limit
+            """, nativeQuery = true)
+    List<OrderState> findRunning(@Param("finalStatuses") Collection<String> finalStatuses, @Param("after") UUID after, @Param("limit") int limit);
+
+}
@@ -0,0 +1,35 @@
+package com.demo.repository;
+
+import com.demo.model.SagaEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface SagaEventRepository extends JpaRepository<SagaEvent, SagaEvent.Key> {
+
+    // Appends the step, unless another one took its sequence already (returns 0 then)
+    @Modifying
+    @Query(value = """
+            INSERT INTO saga_events (order_id, sequence, status, next_status, payload, failure_reason, timestamp)
+            VALUES (:orderId, :sequence, :status, :nextStatus, CAST(:payload AS jsonb), :failureReason, :timestamp)
+            ON CONFLICT (order_id, sequence) DO NOTHING
+            """, nativeQuery = true)
+    int append(@Param("orderId") UUID orderId,
+               @Param("sequence") long sequence,
+               @Param("status") String status,
+               @Param("nextStatus") String nextStatus,
+               @Param("payload") String payload,
+               @Param("failureReason") String failureReason,
+               @Param("timestamp") Instant timestamp);
+
+    // The events to fold on top of a snapshot (-1 for all of them)
+    List<SagaEvent> findByOrderIdAndSequenceGreaterThanOrderBySequence(UUID orderId, long sequence);
+
+}
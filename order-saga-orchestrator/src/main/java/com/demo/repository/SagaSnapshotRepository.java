@@ -0,0 +1,29 @@
+package com.demo.repository;
+
+import com.demo.model.SagaSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Repository
+public interface SagaSnapshotRepository extends JpaRepository<SagaSnapshot, UUID> {
+
+    // Replaces the saga's snapshot, unless it is already as recent
+    @Modifying
+    @Query(value = """
+            INSERT INTO saga_snapshots (order_id, sequence, state, timestamp)
+            VALUES (:orderId, :sequence, CAST(:state AS jsonb), :timestamp)
+            ON CONFLICT (order_id) DO UPDATE SET sequence = EXCLUDED.sequence, state = EXCLUDED.state, timestamp = EXCLUDED.timestamp
+            WHERE saga_snapshots.sequence < EXCLUDED.sequence
+            """, nativeQuery = true)
+    int upsert(@Param("orderId") UUID orderId,
+               @Param("sequence") long sequence,
+               @Param("state") String state,
+               @Param("timestamp") Instant timestamp);
+
+}
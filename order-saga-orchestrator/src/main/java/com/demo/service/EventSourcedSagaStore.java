@@ -0,0 +1,165 @@
+package com.demo.service;
+
+import com.demo.common.payload.Payload;
+import com.demo.component.SagaStateCache;
+import com.demo.model.OrderState;
+import com.demo.model.SagaEvent;
+import com.demo.model.SagaSnapshot;
+import com.demo.model.Status;
+import com.demo.model.WaitingSaga;
+import com.demo.repository.SagaEventRepository;
+import com.demo.repository.SagaSnapshotRepository;
+import com.demo.utility.PayloadJson;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Event-sourced saga store (saga.store=events): every step is a single insert into saga_events, guarded by its sequence
+ * (the version of the state it leads to), and the state is rebuilt by folding the saga's events on top of its latest snapshot,
+ * written every snapshot-every events. The events are the saga's history as well, so orders_state and orders_state_history stay empty.
+ * Sagas in SagaStateCache are moved on without reading their events; if the cached state is behind, the append conflicts
+ * and the state is rebuilt.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "saga.store", havingValue = "events")
+public class EventSourcedSagaStore implements SagaStore {
+
+    private final SagaEventRepository sagaEventRepository;
+    private final SagaSnapshotRepository sagaSnapshotRepository;
+    private final SagaStateCache sagaStateCache;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${saga.events.snapshot-every:5}")
+    private int snapshotEvery;
+
+    @Override
+    public Optional<OrderState> start(UUID orderId, Status next, Payload orderCreatedPayload) {
+        OrderState orderState = OrderState.start(orderId, next, orderCreatedPayload, Instant.now());
+        // Sequence 0, unless the saga has been started already
+        return this.append(orderState, Status.CREATED, orderCreatedPayload, null) ? Optional.of(orderState) : Optional.empty();
+    }
+
+    @Override
+    public Optional<OrderState> transition(UUID orderId, Status expected, Status reached, Status next, Payload payload, String failureReason) {
+        // 1. Start from the cached state if it is where the event expects it, otherwise rebuild it from the events
+        OrderState current = this.sagaStateCache.get(orderId);
+        if (current == null || current.getStatus() != expected) current = this.load(orderId);
+        while (current != null && current.getStatus() == expected) {
+            // 2. Append the step as the next sequence
+            OrderState orderState = current.next(next, payload, failureReason, Instant.now());
+            orderState.setVersion(current.getVersion() + 1);
+            if (this.append(orderState, reached, payload, failureReason)) return Optional.of(orderState);
+            // 3. Another step has that sequence already (the cached state was behind): rebuild the state and check it again
+            this.sagaStateCache.evict(orderId);
+            current = this.load(orderId);
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<OrderState> find(UUID orderId) {
+        OrderState cached = this.sagaStateCache.get(orderId);
+        return Optional.ofNullable(cached != null ? cached : this.load(orderId));
+    }
+
+    @Override
+    public List<WaitingSaga> findWaiting(Collection<Status> statuses, UUID after, int limit) {
+        // Keyset pages of sagas, each with its last event (an index lookup), until enough of them are found waiting:
+        // a page reads the events of its sagas only, however many come after
+        List<WaitingSaga> waiting = new ArrayList<>();
+        UUID cursor = after;
+        List<WaitingSaga> page;
+        do {
+            page = this.jdbcTemplate.query("""
+                    SELECT latest.order_id, latest.next_status, latest.sequence, latest.timestamp FROM (
+                        SELECT DISTINCT order_id FROM saga_events WHERE order_id > ? ORDER BY order_id LIMIT ?
+                    ) sagas
+                    CROSS JOIN LATERAL (
+                        SELECT order_id, next_status, sequence, timestamp FROM saga_events
+                        WHERE saga_events.order_id = sagas.order_id
+                        ORDER BY sequence DESC LIMIT 1
+                    ) latest
+                    ORDER BY latest.order_id
+                    """, (resultSet, rowNum) -> new WaitingSaga(resultSet.getObject(1, UUID.class),
+                    Status.valueOf(resultSet.getString(2)), resultSet.getLong(3), resultSet.getTimestamp(4).toInstant()), cursor, limit);
+            for (WaitingSaga waitingSaga : page) {
+                // The ones past the limit are read again by the next call, which starts after the last one returned
+                if (waiting.size() < limit && statuses.contains(waitingSaga.status())) waiting.add(waitingSaga);
+            }
+            if (!page.isEmpty()) cursor = page.get(page.size() - 1).orderId();
+        } while (page.size() == limit && waiting.size() < limit);
+        return waiting;
+    }
+
+    /**
+     * Rebuilds a saga's state: its events in sequence order, on top of the snapshot they follow (null if they start with sequence 0).
+     * @return null if there is nothing to fold (no such saga)
+     */
+    public static OrderState fold(OrderState snapshot, List<SagaEvent> events) {
+        OrderState orderState = snapshot;
+        for (SagaEvent event : events) {
+            orderState = orderState == null
+                    ? OrderState.start(event.getOrderId(), event.getNextStatus(), event.getPayload(), event.getTimestamp())
+                    : orderState.next(event.getNextStatus(), event.getPayload(), event.getFailureReason(), event.getTimestamp());
+            orderState.setVersion(event.getSequence());
+        }
+        return orderState;
+    }
+
+    private OrderState load(UUID orderId) {
+        // The latest snapshot, if there is one, and the events after it
+        OrderState snapshot = this.sagaSnapshotRepository.findById(orderId).map(SagaSnapshot::getState).orElse(null);
+        long after = snapshot != null ? snapshot.getVersion() : -1;
+        return fold(snapshot, this.sagaEventRepository.findByOrderIdAndSequenceGreaterThanOrderBySequence(orderId, after));
+    }
+
+    private boolean append(OrderState orderState, Status reached, Payload payload, String failureReason) {
+        UUID orderId = orderState.getOrderId();
+        long sequence = orderState.getVersion();
+        // 1. The step, unless another one took its sequence
+        int appended = this.sagaEventRepository.append(orderId, sequence, reached.name(), orderState.getStatus().name(),
+                this.json(payload), failureReason, orderState.getUpdatedAt());
+        if (appended == 0) return false;
+        // 2. Every snapshot-every events, the state as of this one, so a rebuild never folds more than that
+        if (sequence > 0 && sequence % this.snapshotEvery == 0) {
+            this.sagaSnapshotRepository.upsert(orderId, sequence, this.json(orderState), orderState.getUpdatedAt());
+        }
+        // 3. Cached once the step commits (a later step of the same transaction puts its state after this one)
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                sagaStateCache.put(orderState);
+            }
+        });
+        return true;
+    }
+
+    private String json(Payload payload) {
+        return PayloadJson.write(this.objectMapper, payload);
+    }
+
+    private String json(OrderState orderState) {
+        try {
+            return this.objectMapper.writeValueAsString(orderState);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the state of order " + orderState.getOrderId(), e);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.demo.service;
+
+import com.demo.common.payload.Payload;
+import com.demo.common.payload.payment.PaymentFailedPayload;
+import com.demo.common.payload.payment.PaymentSucceededPayload;
+import com.demo.common.payload.shipment.ArrangementFailedPayload;
+import com.demo.common.payload.shipment.ShipmentArrangedPayload;
+import com.demo.component.OrderStateHistoryWriter;
+import com.demo.component.SagaStateCache;
+import com.demo.model.OrderState;
+import com.demo.model.OrderStateHistory;
+import com.demo.model.Status;
+import com.demo.model.WaitingSaga;
+import com.demo.repository.OrderStateRepository;
+import com.demo.utility.PayloadJson;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Saga store with one orders_state row per saga (saga.store=state). Every step is a state-guarded transition:
+ * one conditional UPDATE ... WHERE status = expected, which also records the event's details and returns the updated state.
+ * Sagas whose state is known (cached in SagaStateCache, or moved earlier in the same transaction) are moved on in memory:
+ * the transaction's SagaUnitOfWork writes them with one version-guarded UPDATE each, and all the history with one insert, before it commits
+ * (or OrderStateHistoryWriter writes the history in the background, in 'async' mode).
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "saga.store", havingValue = "state", matchIfMissing = true)
+public class JpaSagaStore implements SagaStore {
+
+    private final OrderStateRepository orderRepository;
+    private final OrderStateHistoryWriter orderStateHistoryWriter;
+    private final ObjectMapper objectMapper;
+    private final SagaStateCache sagaStateCache;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Optional<OrderState> start(UUID orderId, Status next, Payload orderCreatedPayload) {
+        // 1. Create the saga state, unless it exists already
+        Optional<OrderState> orderState = this.orderRepository.insertIfAbsent(orderId, next.name(), this.json(orderCreatedPayload), Instant.now());
+        orderState.ifPresent(this.unitOfWork()::track);
+        // 2. Save the history (audit log)
+        orderState.ifPresent(state -> this.recordHistory(Status.CREATED, orderCreatedPayload, state));
+        return orderState;
+    }
+
+    @Override
+    public Optional<OrderState> transition(UUID orderId, Status expected, Status reached, Status next, Payload payload, String failureReason) {
+        Instant now = Instant.now();
+        SagaUnitOfWork unitOfWork = this.unitOfWork();
+        // 1. Steady state: the saga's state is known (moved earlier in this transaction, or cached) and it is where the event expects it,
+        // so the step is applied in memory. The unit writes it before the commit, guarded by the version the row had
+        OrderState current = unitOfWork.state(orderId);
+        if (current == null) current = this.sagaStateCache.get(orderId);
+        Optional<OrderState> orderState;
+        if (current != null && current.getStatus() == expected) {
+            OrderState moved = current.next(next, payload, failureReason, now);
+            unitOfWork.move(current, moved);
+            orderState = Optional.of(moved);
+        } else {
+            // 2. Otherwise the state-guarded update tells where the saga is (once the row has what this transaction did to it)
+            unitOfWork.flush(orderId);
+            orderState = this.orderRepository.transition(orderId, expected.name(), next.name(),
+                    this.json(payload, PaymentSucceededPayload.class), this.json(payload, PaymentFailedPayload.class),
+                    this.json(payload, ShipmentArrangedPayload.class), this.json(payload, ArrangementFailedPayload.class), failureReason, now);
+            orderState.ifPresent(unitOfWork::track);
+        }
+        // 3. Save the history (audit log)
+        orderState.ifPresent(state -> this.recordHistory(reached, payload, state));
+        return orderState;
+    }
+
+    @Override
+    public Optional<OrderState> find(UUID orderId) {
+        OrderState cached = this.sagaStateCache.get(orderId);
+        return cached != null ? Optional.of(cached) : this.orderRepository.findById(orderId);
+    }
+
+    @Override
+    public List<WaitingSaga> findWaiting(Collection<Status> statuses, UUID after, int limit) {
+        return this.jdbcTemplate.query("""
+                SELECT order_id, status, version, updated_at FROM orders_state
+                WHERE status IN (%s) AND order_id > ?
+                ORDER BY order_id LIMIT ?
+                """.formatted(SagaStore.inList(statuses)), (resultSet, rowNum) -> new WaitingSaga(resultSet.getObject(1, UUID.class),
+                Status.valueOf(resultSet.getString(2)), resultSet.getLong(3), resultSet.getTimestamp(4).toInstant()), after, limit);
+    }
+
+    private void recordHistory(Status reached, Payload payload, OrderState orderState) {
+        // The status the event led to, along with its details, then the one the saga now waits in
+        List<OrderStateHistory> history = new ArrayList<>();
+        history.add(new OrderStateHistory(orderState.getOrderId(), reached, payload));
+        if (orderState.getStatus() != reached) {
+            history.add(new OrderStateHistory(orderState, null));
+        }
+        this.unitOfWork().record(history);
+    }
+
+    /**
+     * The unit of work of the current transaction, bound to it on first use.
+     */
+    private SagaUnitOfWork unitOfWork() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Saga steps must run in a transaction");
+        }
+        SagaUnitOfWork unitOfWork = (SagaUnitOfWork) TransactionSynchronizationManager.getResource(SagaUnitOfWork.class);
+        if (unitOfWork == null) {
+            unitOfWork = new SagaUnitOfWork(this.orderRepository, this.orderStateHistoryWriter, this.sagaStateCache, this::json);
+            TransactionSynchronizationManager.bindResource(SagaUnitOfWork.class, unitOfWork);
+            TransactionSynchronizationManager.registerSynchronization(unitOfWork);
+        }
+        return unitOfWork;
+    }
+
+    // The payload's JSON if it goes to the column of the given type, null (left untouched) otherwise
+    private String json(Payload payload, Class<? extends Payload> type) {
+        return type.isInstance(payload) ? this.json(payload) : null;
+    }
+
+    private String json(Payload payload) {
+        return PayloadJson.write(this.objectMapper, payload);
+    }
+
+}
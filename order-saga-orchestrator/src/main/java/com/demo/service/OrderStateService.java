@@ -6,122 +6,124 @@ import com.demo.common.payload.payment.*;
 import com.demo.common.payload.product.ProductsShortagePayload;
 import com.demo.common.payload.shipment.ArrangementFailedPayload;
 import com.demo.model.OrderState;
-import com.demo.model.OrderStateHistory;
 import com.demo.model.Status;
-import com.demo.repository.OrderStateHistoryRepository;
-import com.demo.repository.OrderStateRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Instant;
+import java.util.Optional;
 import java.util.UUID;
 
+/**
+ * The saga steps, kept by the configured SagaStore. Every step is state-guarded:
+ * an empty result means the saga is not where the event expects it (the event is a duplicate or out of order),
+ * so the caller skips the step. Every step taken is published as a StepTaken event (see SagaDeadlineScheduler).
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class OrderStateService {
 
-    private final OrderStateRepository orderRepository;
-    private final OrderStateHistoryRepository orderStateHistoryRepository;
+    private final SagaStore sagaStore;
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    /**
+     * A step the saga took: the status the event led to (reached), and the state it is in now.
+     */
+    public record StepTaken(OrderState orderState, Status reached) {}
 
     @Transactional
-    public void create(OrderCreatedEvent orderCreatedEvent) {
-        // 1. Create the OrderState entity
-        OrderState orderState = new OrderState();
-        orderState.setOrderId(orderCreatedEvent.getCorrelationId());
-        orderState.setStatus(Status.CREATED);
-        orderState.setOrderCreatedPayload(orderCreatedEvent.getPayload());
-        orderState.setFailureReason(null);
-        orderState.setCreatedAt(Instant.now());
-        orderState.setUpdatedAt(Instant.now());
-        // 2. Save the current state
-        OrderState registeredOrderState = this.orderRepository.saveAndFlush(orderState);
-        // 3. Save the history (audit log)
-        this.orderStateHistoryRepository.saveAndFlush(new OrderStateHistory(registeredOrderState, registeredOrderState.getOrderCreatedPayload()));
+    public Optional<OrderState> start(OrderCreatedEvent orderCreatedEvent, Status next) {
+        UUID orderId = orderCreatedEvent.getCorrelationId();
+        // Create the saga state, unless it exists already
+        Optional<OrderState> orderState = this.sagaStore.start(orderId, next, orderCreatedEvent.getPayload());
+        return this.reportStep(orderId, null, Status.CREATED, orderState);
     }
 
     public OrderState retrieve(UUID orderId) {
-        return this.orderRepository.findById(orderId).orElseThrow();
+        return this.sagaStore.find(orderId).orElseThrow();
     }
 
     @Transactional
-    public void reflectPayment(UUID orderId, Payload paymentPayload) {
-        // 1. Find the current state
-        OrderState orderState = this.retrieve(orderId);
-        // 2. Apply logic based on payload type
+    public Optional<OrderState> reflectPayment(UUID orderId, Payload paymentPayload, Status next) {
+        // Apply logic based on payload type
+        Optional<OrderState> orderState;
+        Status reached;
         if (paymentPayload instanceof PaymentSucceededPayload) {
-            orderState.setPaymentSucceededPayload(paymentPayload);
-            orderState.setStatus(Status.PAYMENT_SUCCEEDED);
+            reached = Status.PAYMENT_SUCCEEDED;
+            orderState = this.sagaStore.transition(orderId, Status.PENDING_PAYMENT, reached, next, paymentPayload, null);
         } else {
             PaymentFailedPayload paymentFailedPayload = (PaymentFailedPayload) paymentPayload;
-            orderState.setPaymentFailedPayload(paymentFailedPayload);
-            orderState.setStatus(Status.PAYMENT_FAILED);
-            orderState.setFailureReason(paymentFailedPayload.getReason()); // Capture failure reason
+            reached = Status.PAYMENT_FAILED;
+            orderState = this.sagaStore.transition(orderId, Status.PENDING_PAYMENT, reached, next,
+                    paymentFailedPayload, paymentFailedPayload.getReason()); // Capture failure reason
         }
-        orderState.setUpdatedAt(Instant.now());
-        // 3. Save the updated state
-        OrderState updatedOrderState = this.orderRepository.saveAndFlush(orderState);
-        // 4. Save the history (audit log)
-        this.orderStateHistoryRepository.saveAndFlush(new OrderStateHistory(updatedOrderState, paymentPayload));
+        return this.reportStep(orderId, Status.PENDING_PAYMENT, reached, orderState);
     }
 
     @Transactional
-    public OrderState reflectProductsUnavailability(UUID orderId, Payload productsShortagePayload) {
-        // 1. Find the current state
-        OrderState orderState = this.retrieve(orderId);
+    public Optional<OrderState> reflectProductsUnavailability(UUID orderId, Payload productsShortagePayload, Status next) {
+        // Record the failure reason
         ProductsShortagePayload payload = (ProductsShortagePayload) productsShortagePayload;
-        orderState.setStatus(Status.PRODUCTS_UNAVAILABILITY);
-        orderState.setFailureReason(payload.getReason()); // Capture failure reason
-        orderState.setUpdatedAt(Instant.now());
-        // 3. Save the updated state
-        OrderState updatedOrderState = this.orderRepository.saveAndFlush(orderState);
-        // 4. Save the history (audit log)
-        this.orderStateHistoryRepository.saveAndFlush(new OrderStateHistory(updatedOrderState, payload));
-        return updatedOrderState;
+        Optional<OrderState> orderState = this.sagaStore.transition(orderId, Status.PENDING_AVAILABILITY_CONFIRMATION,
+                Status.PRODUCTS_UNAVAILABILITY, next, payload, payload.getReason());
+        return this.reportStep(orderId, Status.PENDING_AVAILABILITY_CONFIRMATION, Status.PRODUCTS_UNAVAILABILITY, orderState);
     }
 
     @Transactional
-    public void reflectShipmentArrangement(UUID orderId, Payload shipmentArrangedPayload) {
-        // 1. Find the current state
-        OrderState orderState = this.retrieve(orderId);
-        orderState.setShipmentArrangedPayload(shipmentArrangedPayload);
-        orderState.setStatus(Status.SHIPMENT_ARRANGED);
-        orderState.setUpdatedAt(Instant.now());
-        // 3. Save the updated state
-        OrderState updatedOrderState = this.orderRepository.saveAndFlush(orderState);
-        // 4. Save the history (audit log)
-        this.orderStateHistoryRepository.saveAndFlush(new OrderStateHistory(updatedOrderState, shipmentArrangedPayload));
+    public Optional<OrderState> reflectShipmentArrangement(UUID orderId, Payload shipmentArrangedPayload, Status next) {
+        // Record the shipment details
+        Optional<OrderState> orderState = this.sagaStore.transition(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT,
+                Status.SHIPMENT_ARRANGED, next, shipmentArrangedPayload, null);
+        return this.reportStep(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, Status.SHIPMENT_ARRANGED, orderState);
     }
 
     @Transactional
-    public OrderState reflectShipmentArrangementFailure(UUID orderId, Payload arrangementFailedPayload) {
-        // 1. Find the current state
-        OrderState orderState = this.retrieve(orderId);
+    public Optional<OrderState> reflectShipmentArrangementFailure(UUID orderId, Payload arrangementFailedPayload, Status next) {
+        // Record the failure details
         ArrangementFailedPayload payload = (ArrangementFailedPayload) arrangementFailedPayload;
-        orderState.setArrangementFailedPayload(payload);
-        orderState.setStatus(Status.SHIPMENT_ARRANGEMENT_FAILED);
-        orderState.setFailureReason(payload.getReason());
-        orderState.setUpdatedAt(Instant.now());
-        // 3. Save the updated state
-        OrderState updatedOrderState = this.orderRepository.saveAndFlush(orderState);
-        // 4. Save the history (audit log)
-        this.orderStateHistoryRepository.saveAndFlush(new OrderStateHistory(updatedOrderState, payload));
-        return updatedOrderState;
+        Optional<OrderState> orderState = this.sagaStore.transition(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT,
+                Status.SHIPMENT_ARRANGEMENT_FAILED, next, payload, payload.getReason());
+        return this.reportStep(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, Status.SHIPMENT_ARRANGEMENT_FAILED, orderState);
+    }
+
+    @Transactional
+    public Optional<OrderState> updateStatus(UUID orderId, Status expected, Status next) {
+        return this.updateStatus(orderId, expected, next, next);
     }
 
+    /**
+     * Moves the saga from the expected status to the next one through an intermediate status,
+     * which only shows in the history (e.g. AVAILABILITY_CONFIRMED on the way to PENDING_SHIPMENT_ARRANGEMENT).
+     */
     @Transactional
-    public OrderState updateStatus(UUID orderId, Status newStatus) {
-        // 1. Find the current state
-        OrderState orderState = this.retrieve(orderId);
-        orderState.setStatus(newStatus);
-        orderState.setUpdatedAt(Instant.now());
-        // 3. Save the updated state
-        OrderState updatedOrderState = this.orderRepository.saveAndFlush(orderState);
-        // 4. Save the history (audit log)
-        this.orderStateHistoryRepository.saveAndFlush(new OrderStateHistory(updatedOrderState, null));
-        return updatedOrderState;
+    public Optional<OrderState> updateStatus(UUID orderId, Status expected, Status reached, Status next) {
+        // Update the status, if the saga is still where the event expects it
+        Optional<OrderState> orderState = this.sagaStore.transition(orderId, expected, reached, next, null, null);
+        return this.reportStep(orderId, expected, reached, orderState);
+    }
+
+    /**
+     * Moves a saga that waited too long in the expected status to the next one: the same status to retry the step,
+     * or the one its compensation waits in. Recorded as DEADLINE_EXPIRED, with the failure reason.
+     */
+    @Transactional
+    public Optional<OrderState> expire(UUID orderId, Status expected, Status next, String failureReason) {
+        Optional<OrderState> orderState = this.sagaStore.transition(orderId, expected, Status.DEADLINE_EXPIRED, next, null, failureReason);
+        return this.reportStep(orderId, expected, Status.DEADLINE_EXPIRED, orderState);
+    }
+
+    private Optional<OrderState> reportStep(UUID orderId, Status expected, Status reached, Optional<OrderState> orderState) {
+        if (orderState.isEmpty()) {
+            log.warn("---> Skipping {} for order {}: the saga is not in {} (duplicate or out-of-order event) <---",
+                    reached, orderId, expected != null ? expected : "its initial state");
+        } else {
+            // Listeners see it once the step commits
+            this.applicationEventPublisher.publishEvent(new StepTaken(orderState.get(), reached));
+        }
+        return orderState;
     }
 
 }
@@ -7,30 +7,104 @@ import com.demo.common.command.payment.ProcessPaymentCommand;
 import com.demo.common.command.product.ConfirmAvailabilityCommand;
 import com.demo.common.command.product.UpdateProductsCommand;
 import com.demo.common.constant.Topics;
+import com.demo.common.serde.MessageHeaders;
+import com.demo.component.JournalOutbox;
 import com.demo.model.OutboxCommand;
 import com.demo.model.Status;
 import com.demo.repository.OutboxCommandRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.kafka.support.mapping.AbstractJavaTypeMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class OutboxCommandService {
 
+    private static final int ACK_CHUNK_SIZE = 1000;
+    // Rows leased at insert time by the fast path; relay claims always get a higher epoch
+    private static final long FAST_PATH_EPOCH = 0;
+
     private final OutboxCommandRepository outboxCommandRepository;
+    private final PublisherService publisherService;
+    private final ObjectProvider<JournalOutbox> journalOutbox;
+
+    // Fast-path send results, applied in bulk by flushAcknowledgements()
+    private final Queue<UUID> publishedAcks = new ConcurrentLinkedQueue<>();
+    private final Queue<UUID> returnedAcks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong leaseEpochs = new AtomicLong(FAST_PATH_EPOCH);
+
+    @Value("${outbox.relay.instance-id:${spring.application.name}-${random.uuid}}")
+    private String instanceId;
+
+    @Value("${outbox.relay.lease-ms:180000}")
+    private long leaseMs;
+
+    @Value("${outbox.relay.fast-path.enabled:true}")
+    private boolean fastPathEnabled;
+
+    @Value("${outbox.relay.engine:polling}")
+    private String relayEngine;
+
+    @Value("${outbox.relay.delete-on-publish:false}")
+    private boolean deleteOnPublish;
+
+    @Value("${outbox.relay.passthrough:false}")
+    private boolean passthrough;
+
+    @Value("${outbox.retry.base-delay-ms:1000}")
+    private long retryBaseDelayMs;
+
+    @Value("${outbox.retry.max-delay-ms:300000}")
+    private long retryMaxDelayMs;
 
     @Transactional
     public void create(Command command) {
+        this.create(command, command.getId());
+    }
+
+    /**
+     * Stores a command issued again (see SagaDeadlineHandler) in a row of its own, the first one's row having its ID:
+     * it goes out with that ID all the same, so the consumers drop it as a duplicate if the first one got through.
+     */
+    @Transactional
+    public void reissue(Command command) {
+        this.create(command, UUID.randomUUID());
+    }
+
+    private void create(Command command, UUID rowId) {
         OutboxCommand outboxCommand = new OutboxCommand();
         // 1. Copy common command properties
-        outboxCommand.setId(command.getId());
+        outboxCommand.setId(rowId);
+        if (!rowId.equals(command.getId())) outboxCommand.setCommandId(command.getId());
         outboxCommand.setName(command.getName());
         outboxCommand.setCorrelationId(command.getCorrelationId());
-        outboxCommand.setCommand(command); // The full JSON payload
+        if (this.passthrough) {
+            // Store the exact bytes the relay will send, so it doesn't have to go through Jackson again
+            outboxCommand.setPayload(this.publisherService.serialize(command));
+            outboxCommand.setTypeId(command.getClass().getName());
+        } else {
+            outboxCommand.setCommand(command); // The full JSON payload
+        }
         outboxCommand.setTimestamp(command.getTimestamp());
         outboxCommand.setStatus(Status.PENDING_PUBLISHING);
         // 2. Perform Topic Routing based on command type
@@ -45,21 +119,147 @@ public class OutboxCommandService {
         } else {
             outboxCommand.setTopic(Topics.SHIPMENT_COMMANDS_TOPIC);
         }
-        // 3. Save to database atomically
-        this.outboxCommandRepository.saveAndFlush(outboxCommand);
+        // 3. With the journal store, the message goes to the journal instead of the table
+        JournalOutbox journal = this.journalOutbox.getIfAvailable();
+        if (journal != null) {
+            byte[] payload = outboxCommand.getPayload() != null ? outboxCommand.getPayload() : this.publisherService.serialize(command);
+            this.appendAfterCommit(journal, outboxCommand, payload);
+            return;
+        }
+        // 4. On the fast path, lease the row to this instance right away so the relay leaves it to the after-commit hook
+        // (the CDC relay publishes every insert, so there is no fast path with it)
+        boolean fastPath = this.fastPathEnabled && !"cdc".equals(this.relayEngine) && TransactionSynchronizationManager.isSynchronizationActive();
+        if (fastPath) {
+            outboxCommand.setLockedBy(this.instanceId);
+            outboxCommand.setLockedUntil(Instant.now().plusMillis(this.leaseMs));
+            outboxCommand.setLeaseEpoch(FAST_PATH_EPOCH);
+            outboxCommand.setAttempts(1);
+        }
+        // 5. Save to database atomically (flushed with the transaction, so the inserts of a batch go out together)
+        this.outboxCommandRepository.save(outboxCommand);
+        // 6. Publish as soon as the surrounding transaction commits (nothing is sent if it rolls back)
+        if (fastPath) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishAfterCommit(outboxCommand);
+                }
+            });
+        }
+    }
+
+    private void appendAfterCommit(JournalOutbox journal, OutboxCommand outboxCommand, byte[] payload) {
+        String correlationId = String.valueOf(outboxCommand.getCorrelationId());
+        String typeId = outboxCommand.getTypeId() != null ? outboxCommand.getTypeId() : outboxCommand.getCommand().getClass().getName();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            journal.append(outboxCommand.getTopic(), correlationId, typeId, payload);
+            return;
+        }
+        // The journal can't roll back, so nothing is appended before the state change is committed
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                journal.append(outboxCommand.getTopic(), correlationId, typeId, payload);
+            }
+        });
     }
 
     @Transactional
-    @Scheduled(fixedRate = 120000) // 2 min
-    // @Scheduled(cron = "0 0 3 * * 0") // 03:00 Every Sunday
-    public void deletePublished() {
-        this.outboxCommandRepository.deleteAll(this.outboxCommandRepository.findByStatus(Status.PUBLISHED));
+    public List<OutboxCommand> claimBatch(int batchSize) {
+        // 1. Lock the oldest pending rows, skipping the ones other relays are working on
+        List<OutboxCommand> outboxCommands = this.outboxCommandRepository.findClaimable(Instant.now(), batchSize);
+        if (outboxCommands.isEmpty()) return outboxCommands;
+        // 2. Lease them to this instance, so they stay claimed after the row locks are released on commit
+        Instant lockedUntil = Instant.now().plusMillis(this.leaseMs);
+        long epoch = this.leaseEpochs.incrementAndGet();
+        List<UUID> ids = outboxCommands.stream().map(OutboxCommand::getId).toList();
+        this.outboxCommandRepository.lease(ids, this.instanceId, lockedUntil, epoch);
+        // 3. Reflect the lease on the (now detached) entities
+        for (OutboxCommand outboxCommand : outboxCommands) {
+            outboxCommand.setLockedBy(this.instanceId);
+            outboxCommand.setLockedUntil(lockedUntil);
+            outboxCommand.setLeaseEpoch(epoch);
+        }
+        return outboxCommands;
+    }
+
+    public CompletableFuture<?> send(OutboxCommand outboxCommand) {
+        String correlationId = String.valueOf(outboxCommand.getCorrelationId());
+        // Passthrough rows go out as stored
+        if (outboxCommand.getPayload() != null) {
+            return this.publisherService.publishRaw(outboxCommand.getTopic(), correlationId, outboxCommand.getPayload(), outboxCommand.getTypeId(), outboxCommand.messageId());
+        }
+        return this.publisherService.publish(outboxCommand.getTopic(), correlationId, outboxCommand.getCommand());
+    }
+
+    public ProducerRecord<String, Object> toRecord(OutboxCommand outboxCommand) {
+        String correlationId = String.valueOf(outboxCommand.getCorrelationId());
+        if (outboxCommand.getPayload() == null) {
+            ProducerRecord<String, Object> record = new ProducerRecord<>(outboxCommand.getTopic(), correlationId, outboxCommand.getCommand());
+            MessageHeaders.stamp(record.headers(), outboxCommand.getCommand());
+            return record;
+        }
+        ProducerRecord<String, Object> record = new ProducerRecord<>(outboxCommand.getTopic(), correlationId, outboxCommand.getPayload());
+        record.headers().add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, outboxCommand.getTypeId().getBytes(StandardCharsets.UTF_8));
+        MessageHeaders.stamp(record.headers(), outboxCommand.messageId(), outboxCommand.getTypeId(), correlationId);
+        return record;
+    }
+
+    private void publishAfterCommit(OutboxCommand outboxCommand) {
+        UUID id = outboxCommand.getId();
+        try {
+            this.send(outboxCommand)
+                    // Success: Mark as published; Failure: hand the row back to the relay
+                    .whenComplete((result, exception) -> (exception == null ? this.publishedAcks : this.returnedAcks).add(id));
+        } catch (RuntimeException e) {
+            // e.g. the producer could not fetch the topic metadata in time
+            this.returnedAcks.add(id);
+        }
     }
 
+    /**
+     * Applies the outcome of a whole relay batch in one statement per status, instead of one transaction per message.
+     */
     @Transactional
-    public void update(OutboxCommand outboxCommand, Status newStatus) {
-        outboxCommand.setStatus(newStatus);
-        this.outboxCommandRepository.saveAndFlush(outboxCommand);
+    public void acknowledge(Collection<UUID> ids, long epoch, Status newStatus) {
+        this.apply(new ArrayList<>(ids), epoch, newStatus);
+    }
+
+    @Scheduled(fixedDelay = 100) // 100ms
+    public void flushAcknowledgements() {
+        // Each statement runs in its own transaction; if one fails, its rows stay leased
+        // and the relay publishes them again once the lease expires
+        this.apply(drain(this.publishedAcks), FAST_PATH_EPOCH, Status.PUBLISHED);
+        this.apply(drain(this.returnedAcks), FAST_PATH_EPOCH, Status.PENDING_PUBLISHING);
+    }
+
+    private void apply(List<UUID> ids, long epoch, Status newStatus) {
+        // Keep each statement well below the bind parameter limit
+        for (int from = 0; from < ids.size(); from += ACK_CHUNK_SIZE) {
+            List<UUID> chunk = ids.subList(from, Math.min(from + ACK_CHUNK_SIZE, ids.size()));
+            if (newStatus == Status.PUBLISHED && this.deleteOnPublish) {
+                this.outboxCommandRepository.deleteClaimed(chunk, this.instanceId, epoch);
+            } else if (newStatus == Status.PUBLISHING_FAILED) {
+                this.outboxCommandRepository.fail(chunk, this.instanceId, epoch, this.retryBaseDelayMs, this.retryMaxDelayMs);
+            } else {
+                this.outboxCommandRepository.release(chunk, this.instanceId, epoch, newStatus);
+            }
+        }
+    }
+
+    public long countFailed() {
+        return this.outboxCommandRepository.countByStatus(Status.PUBLISHING_FAILED);
+    }
+
+    public Instant findOldestUnpublished() {
+        return this.outboxCommandRepository.findOldestTimestamp(List.of(Status.PENDING_PUBLISHING, Status.PUBLISHING_FAILED));
+    }
+
+    private static List<UUID> drain(Queue<UUID> queue) {
+        List<UUID> ids = new ArrayList<>();
+        UUID id;
+        while ((id = queue.poll()) != null) ids.add(id);
+        return ids;
     }
 
 }
@@ -0,0 +1,46 @@
+package com.demo.service;
+
+import com.demo.common.payload.Payload;
+import com.demo.model.OrderState;
+import com.demo.model.Status;
+import com.demo.model.WaitingSaga;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Where the saga states are kept (saga.store): 'state' (JpaSagaStore) keeps one orders_state row per saga, updated by every step,
+ * along with orders_state_history; 'events' (EventSourcedSagaStore) appends the steps and folds them into the state.
+ * Every step is guarded: an empty result means the saga is not where the event expects it (the event is a duplicate or out of order).
+ * Called within the step's transaction.
+ */
+public interface SagaStore {
+
+    /**
+     * Starts the saga in the next status, unless it has been started already.
+     */
+    Optional<OrderState> start(UUID orderId, Status next, Payload orderCreatedPayload);
+
+    /**
+     * Moves the saga from the expected status to the next one, recording the status the event led to (reached) along with
+     * its payload and failure reason. Null details leave the state's untouched.
+     */
+    Optional<OrderState> transition(UUID orderId, Status expected, Status reached, Status next, Payload payload, String failureReason);
+
+    Optional<OrderState> find(UUID orderId);
+
+    /**
+     * Keyset scan of the sagas waiting in one of the given statuses: the first ones (up to limit) whose order ID comes after the given one,
+     * in order ID order. The last one's order ID starts the next page.
+     */
+    List<WaitingSaga> findWaiting(Collection<Status> statuses, UUID after, int limit);
+
+    // The statuses as an SQL list, inlined: enum names only, so nothing to escape
+    static String inList(Collection<Status> statuses) {
+        return statuses.stream().map(status -> "'" + status.name() + "'").collect(Collectors.joining(", "));
+    }
+
+}
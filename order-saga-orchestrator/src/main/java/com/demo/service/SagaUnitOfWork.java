@@ -0,0 +1,138 @@
+package com.demo.service;
+
+import com.demo.common.payload.Payload;
+import com.demo.component.OrderStateHistoryWriter;
+import com.demo.component.SagaStateCache;
+import com.demo.model.OrderState;
+import com.demo.model.OrderStateHistory;
+import com.demo.repository.OrderStateRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * The saga writes of one transaction (one message, or a whole poll in batch mode), held back until right before it commits:
+ * then every saga it moved gets one version-guarded UPDATE, however many steps it went through,
+ * and all the history entries go in with one multi-row insert (or to OrderStateHistoryWriter's queue once it commits, in 'async' mode).
+ * Bound to the transaction by JpaSagaStore.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class SagaUnitOfWork implements TransactionSynchronization {
+
+    private final OrderStateRepository orderRepository;
+    private final OrderStateHistoryWriter orderStateHistoryWriter;
+    private final SagaStateCache sagaStateCache;
+    private final Function<Payload, String> json;
+
+    // The sagas this unit knows the state of, in the order it first saw them
+    private final Map<UUID, Entry> entries = new LinkedHashMap<>();
+    private final List<OrderStateHistory> history = new ArrayList<>();
+
+    /**
+     * The state the saga is in as far as this transaction is concerned, or null if the unit hasn't seen it yet.
+     */
+    OrderState state(UUID orderId) {
+        Entry entry = this.entries.get(orderId);
+        return entry != null ? entry.state : null;
+    }
+
+    /**
+     * A state read from (or just written to) orders_state, with nothing left to write.
+     */
+    void track(OrderState orderState) {
+        this.entries.put(orderState.getOrderId(), new Entry(orderState.getVersion(), orderState, false));
+    }
+
+    /**
+     * A step applied in memory on top of a known state: written when the unit flushes, guarded by the version
+     * the row had when this unit first moved it. The next state carries the version the row will have then.
+     */
+    void move(OrderState current, OrderState next) {
+        Entry entry = this.entries.computeIfAbsent(current.getOrderId(), orderId -> new Entry(current.getVersion(), current, false));
+        next.setVersion(entry.version + 1);
+        entry.state = next;
+        entry.dirty = true;
+    }
+
+    void record(List<OrderStateHistory> entries) {
+        this.history.addAll(entries);
+    }
+
+    /**
+     * Writes what the unit holds for the saga, e.g. before a state-guarded update has to read its row.
+     */
+    void flush(UUID orderId) {
+        Entry entry = this.entries.get(orderId);
+        if (entry != null && entry.dirty) this.write(orderId, entry);
+    }
+
+    @Override
+    public void beforeCommit(boolean readOnly) {
+        // 1. One UPDATE per saga moved in this transaction
+        this.entries.forEach((orderId, entry) -> {
+            if (entry.dirty) this.write(orderId, entry);
+        });
+        // 2. One insert for all the history entries, unless they are written asynchronously once the transaction commits
+        if (this.history.isEmpty() || this.orderStateHistoryWriter.isAsync()) return;
+        this.orderStateHistoryWriter.write(this.history);
+        this.history.clear();
+    }
+
+    @Override
+    public void afterCommit() {
+        if (this.history.isEmpty()) return;
+        this.orderStateHistoryWriter.enqueue(this.history);
+        this.history.clear();
+    }
+
+    @Override
+    public void afterCompletion(int status) {
+        TransactionSynchronizationManager.unbindResourceIfPossible(SagaUnitOfWork.class);
+        // The states are committed now, or (rollback) the cache may be ahead of orders_state
+        this.entries.forEach((orderId, entry) -> {
+            if (status == STATUS_COMMITTED) this.sagaStateCache.put(entry.state);
+            else this.sagaStateCache.evict(orderId);
+        });
+    }
+
+    private void write(UUID orderId, Entry entry) {
+        OrderState state = entry.state;
+        int updated = this.orderRepository.update(orderId, entry.version, state.getStatus().name(),
+                this.json.apply(state.getPaymentSucceededPayload()), this.json.apply(state.getPaymentFailedPayload()),
+                this.json.apply(state.getShipmentArrangedPayload()), this.json.apply(state.getArrangementFailedPayload()),
+                state.getFailureReason(), state.getUpdatedAt());
+        // Changed behind the cache's back (e.g. by the previous owner of the partition): roll back, the redelivery reads the row
+        if (updated == 0) {
+            log.warn("---> Order {} changed since version {}, rolling back <---", orderId, entry.version);
+            throw new OptimisticLockingFailureException("Order " + orderId + " changed since version " + entry.version);
+        }
+        entry.version++;
+        entry.dirty = false;
+    }
+
+    private static final class Entry {
+
+        // The version of the row as it is in the database (as of this transaction)
+        private long version;
+        private OrderState state;
+        private boolean dirty;
+
+        private Entry(long version, OrderState state, boolean dirty) {
+            this.version = version;
+            this.state = state;
+            this.dirty = dirty;
+        }
+
+    }
+
+}
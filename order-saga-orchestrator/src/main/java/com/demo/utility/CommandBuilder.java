@@ -24,6 +24,7 @@ import com.demo.common.payload.shipment.CancelShipmentPayload;
 import com.demo.common.payload.shipment.ShipmentArrangedPayload;
 import com.demo.model.OrderState;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -37,7 +38,7 @@ public class CommandBuilder {
 
     public static Command cancelOrderCommand(UUID correlationId, String reason) {
         Command cancelOrderCommand = new CancelOrderCommand();
-        cancelOrderCommand.setId(UUID.randomUUID());
+        cancelOrderCommand.setId(CommandBuilder.commandId(correlationId, Commands.CANCEL_ORDER));
         cancelOrderCommand.setType(Type.COMMAND);
         cancelOrderCommand.setName(Commands.CANCEL_ORDER);
         cancelOrderCommand.setTimestamp(Instant.now());
@@ -50,11 +51,18 @@ public class CommandBuilder {
     }
 
     public static Command confirmAvailabilityCommand(OrderCreatedEvent orderCreatedEvent) {
-        UUID correlationId = orderCreatedEvent.getCorrelationId();
-        OrderCreatedPayload orderCreatedPayload = (OrderCreatedPayload) orderCreatedEvent.getPayload();
+        return CommandBuilder.confirmAvailabilityCommand(orderCreatedEvent.getCorrelationId(), (OrderCreatedPayload) orderCreatedEvent.getPayload());
+    }
+
+    // Re-issued from the saga state when the availability confirmation times out (see SagaDeadlineHandler)
+    public static Command confirmAvailabilityCommand(UUID correlationId, OrderState orderState) {
+        return CommandBuilder.confirmAvailabilityCommand(correlationId, (OrderCreatedPayload) orderState.getOrderCreatedPayload());
+    }
+
+    private static Command confirmAvailabilityCommand(UUID correlationId, OrderCreatedPayload orderCreatedPayload) {
         List<ProductQuantityDTO> productsToCheck = CommandBuilder.convertToProductQuantityList(orderCreatedPayload.getProducts());
         Command confirmAvailabilityCommand = new ConfirmAvailabilityCommand();
-        confirmAvailabilityCommand.setId(UUID.randomUUID());
+        confirmAvailabilityCommand.setId(CommandBuilder.commandId(correlationId, Commands.CONFIRM_AVAILABILITY));
         confirmAvailabilityCommand.setType(Type.COMMAND);
         confirmAvailabilityCommand.setName(Commands.CONFIRM_AVAILABILITY);
         confirmAvailabilityCommand.setTimestamp(Instant.now());
@@ -68,7 +76,7 @@ public class CommandBuilder {
 
     public static Command updateProductsCommand(UUID correlationId, OrderState orderState) {
         Command updateProductsCommand = new UpdateProductsCommand();
-        updateProductsCommand.setId(UUID.randomUUID());
+        updateProductsCommand.setId(CommandBuilder.commandId(correlationId, Commands.UPDATE_PRODUCTS));
         updateProductsCommand.setType(Type.COMMAND);
         updateProductsCommand.setName(Commands.UPDATE_PRODUCTS);
         updateProductsCommand.setTimestamp(Instant.now());
@@ -84,7 +92,7 @@ public class CommandBuilder {
 
     public static Command completeOrderCommand(UUID correlationId) {
         Command completeOrderCommand = new CompleteOrderCommand();
-        completeOrderCommand.setId(UUID.randomUUID());
+        completeOrderCommand.setId(CommandBuilder.commandId(correlationId, Commands.COMPLETE_ORDER));
         completeOrderCommand.setType(Type.COMMAND);
         completeOrderCommand.setName(Commands.COMPLETE_ORDER);
         completeOrderCommand.setTimestamp(Instant.now());
@@ -96,7 +104,7 @@ public class CommandBuilder {
     public static Command processPaymentCommand(UUID correlationId, OrderState orderState) {
         OrderCreatedPayload orderCreatedPayload = (OrderCreatedPayload) orderState.getOrderCreatedPayload();
         Command processPaymentCommand = new ProcessPaymentCommand();
-        processPaymentCommand.setId(UUID.randomUUID());
+        processPaymentCommand.setId(CommandBuilder.commandId(correlationId, Commands.PROCESS_PAYMENT));
         processPaymentCommand.setType(Type.COMMAND);
         processPaymentCommand.setName(Commands.PROCESS_PAYMENT);
         processPaymentCommand.setTimestamp(Instant.now());
@@ -114,7 +122,7 @@ public class CommandBuilder {
         OrderCreatedPayload orderCreatedPayload = (OrderCreatedPayload) orderState.getOrderCreatedPayload();
         List<ProductQuantityDTO> products = CommandBuilder.convertToProductQuantityList(orderCreatedPayload.getProducts());
         Command arrangeShipmentCommand = new ArrangeShipmentCommand();
-        arrangeShipmentCommand.setId(UUID.randomUUID());
+        arrangeShipmentCommand.setId(CommandBuilder.commandId(correlationId, Commands.ARRANGE_SHIPMENT));
         arrangeShipmentCommand.setType(Type.COMMAND);
         arrangeShipmentCommand.setName(Commands.ARRANGE_SHIPMENT);
         arrangeShipmentCommand.setTimestamp(Instant.now());
@@ -130,7 +138,7 @@ public class CommandBuilder {
 
     public static Command cancelShipmentCommand(UUID correlationId, OrderState orderState, String reason) {
         Command cancelShipmentCommand = new CancelShipmentCommand();
-        cancelShipmentCommand.setId(UUID.randomUUID());
+        cancelShipmentCommand.setId(CommandBuilder.commandId(correlationId, Commands.CANCEL_SHIPMENT));
         cancelShipmentCommand.setType(Type.COMMAND);
         cancelShipmentCommand.setName(Commands.CANCEL_SHIPMENT);
         cancelShipmentCommand.setTimestamp(Instant.now());
@@ -144,6 +152,12 @@ public class CommandBuilder {
         return cancelShipmentCommand;
     }
 
+    // A saga issues each command once, so its ID is derived from the order and the command: issued again (see SagaDeadlineHandler),
+    // it keeps the first one's ID, and the consumers drop it as a duplicate if the first one got through
+    private static UUID commandId(UUID correlationId, String name) {
+        return UUID.nameUUIDFromBytes((correlationId + ":" + name).getBytes(StandardCharsets.UTF_8));
+    }
+
     private static List<ProductQuantityDTO> convertToProductQuantityList(List<OrderProductDTO> orderProductDTOs) {
         List<ProductQuantityDTO> productsToCheck = new ArrayList<>();
         for (OrderProductDTO orderProductDTO : orderProductDTOs) {
@@ -0,0 +1,29 @@
+package com.demo.utility;
+
+import com.demo.common.payload.Payload;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The JSON of the payloads written to jsonb columns with plain SQL (saga state, events and history).
+ */
+public class PayloadJson {
+
+    private PayloadJson() {
+        throw new IllegalStateException("Utility class should not be instantiated");
+    }
+
+    /**
+     * @return null for a null payload
+     */
+    public static String write(ObjectMapper objectMapper, Payload payload) {
+        if (payload == null) return null;
+        try {
+            // Written as a Payload, so the type property the entity mapping reads back is included
+            return objectMapper.writerFor(Payload.class).writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + payload.getClass().getSimpleName(), e);
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+-- Turns the Hibernate-generated outbox_commands table into one range-partitioned by day on timestamp (see PartitionManager).
+-- The primary key has to include the partition key, hence (id, timestamp).
+CREATE OR REPLACE FUNCTION partition_outbox_commands() RETURNS void AS
+'BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class WHERE relname = ''outbox_commands'' AND relkind = ''r'') THEN
+        CREATE TABLE outbox_commands_partitioned (LIKE outbox_commands INCLUDING DEFAULTS INCLUDING CONSTRAINTS) PARTITION BY RANGE (timestamp);
+        INSERT INTO outbox_commands_partitioned SELECT * FROM outbox_commands;
+        DROP TABLE outbox_commands;
+        ALTER TABLE outbox_commands_partitioned RENAME TO outbox_commands;
+        ALTER TABLE outbox_commands ADD PRIMARY KEY (id, timestamp);
+        CREATE INDEX idx_outbox_commands_status_timestamp ON outbox_commands (status, timestamp);
+        -- Catches rows outside the pre-created days, and unpublished rows carried over from retired partitions
+        CREATE TABLE outbox_commands_default PARTITION OF outbox_commands DEFAULT;
+    END IF;
+END;'
+LANGUAGE plpgsql;
+
+-- Creates the daily partitions from today up to days_ahead days in the future
+CREATE OR REPLACE FUNCTION create_outbox_commands_partitions(days_ahead integer) RETURNS void AS
+'DECLARE
+    partition_day date;
+BEGIN
+    FOR i IN 0..days_ahead LOOP
+        partition_day := current_date + i;
+        EXECUTE format(''CREATE TABLE IF NOT EXISTS %I PARTITION OF outbox_commands FOR VALUES FROM (%L) TO (%L)'',
+                       ''outbox_commands_p'' || to_char(partition_day, ''YYYYMMDD''), partition_day, partition_day + 1);
+    END LOOP;
+END;'
+LANGUAGE plpgsql;
+
+SELECT partition_outbox_commands();
+
+SELECT create_outbox_commands_partitions(2);
+
+-- Wakes up the outbox relay as soon as new rows are committed (see OutboxNotificationListener).
+-- Rows the after-commit fast path inserts already leased (locked_by set) are not for the relay, so they don't wake it.
+-- Postgres folds identical notifications per transaction, so a multi-row insert still sends one.
+CREATE OR REPLACE FUNCTION notify_outbox_commands() RETURNS trigger AS
+'BEGIN PERFORM pg_notify(''outbox_commands'', ''''); RETURN NULL; END;'
+LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS outbox_commands_notify ON outbox_commands;
+
+CREATE TRIGGER outbox_commands_notify AFTER INSERT ON outbox_commands
+FOR EACH ROW WHEN (NEW.locked_by IS NULL) EXECUTE FUNCTION notify_outbox_commands();
+
+-- Turns the Hibernate-generated consumed_messages table into one range-partitioned by hour on the message timestamp
+-- (see ConsumedMessageService.cleanUp()). A redelivered message keeps its timestamp, so (id, timestamp) still catches it.
+CREATE OR REPLACE FUNCTION partition_consumed_messages() RETURNS void AS
+'BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class WHERE relname = ''consumed_messages'' AND relkind = ''r'') THEN
+        CREATE TABLE consumed_messages_partitioned (LIKE consumed_messages INCLUDING DEFAULTS INCLUDING CONSTRAINTS) PARTITION BY RANGE (timestamp);
+        INSERT INTO consumed_messages_partitioned SELECT * FROM consumed_messages;
+        DROP TABLE consumed_messages;
+        ALTER TABLE consumed_messages_partitioned RENAME TO consumed_messages;
+        ALTER TABLE consumed_messages ADD PRIMARY KEY (id, timestamp);
+        CREATE INDEX idx_consumed_messages_partition_offset ON consumed_messages (topic, kafka_partition, kafka_offset);
+        -- Catches messages with timestamps outside the created hours
+        CREATE TABLE consumed_messages_default PARTITION OF consumed_messages DEFAULT;
+    END IF;
+END;'
+LANGUAGE plpgsql;
+
+-- Creates the hourly (UTC) partitions from hours_back hours ago up to hours_ahead hours in the future.
+-- Rows the default partition holds for an hour (early timestamps, or hours missed while the service was down) would fail
+-- the new partition's creation, so they are moved into it, within the same transaction.
+CREATE OR REPLACE FUNCTION create_consumed_messages_partitions(hours_back integer, hours_ahead integer) RETURNS void AS
+'DECLARE
+    partition_hour timestamp;
+    partition_name text;
+    hour_start timestamptz;
+    hour_end timestamptz;
+BEGIN
+    FOR i IN -hours_back..hours_ahead LOOP
+        partition_hour := date_trunc(''hour'', now() AT TIME ZONE ''UTC'') + make_interval(hours => i);
+        partition_name := ''consumed_messages_p'' || to_char(partition_hour, ''YYYYMMDDHH24'');
+        CONTINUE WHEN to_regclass(partition_name) IS NOT NULL;
+        hour_start := partition_hour AT TIME ZONE ''UTC'';
+        hour_end := (partition_hour + interval ''1 hour'') AT TIME ZONE ''UTC'';
+        CREATE TEMP TABLE consumed_messages_moved (LIKE consumed_messages) ON COMMIT DROP;
+        WITH moved AS (DELETE FROM consumed_messages_default WHERE timestamp >= hour_start AND timestamp < hour_end RETURNING *)
+        INSERT INTO consumed_messages_moved SELECT * FROM moved;
+        EXECUTE format(''CREATE TABLE IF NOT EXISTS %I PARTITION OF consumed_messages FOR VALUES FROM (%L) TO (%L)'',
+                       partition_name, hour_start, hour_end);
+        INSERT INTO consumed_messages SELECT * FROM consumed_messages_moved;
+        DROP TABLE consumed_messages_moved;
+    END LOOP;
+END;'
+LANGUAGE plpgsql;
+
+SELECT partition_consumed_messages();
+
+SELECT create_consumed_messages_partitions(24, 2);
@@ -0,0 +1,119 @@
+package com.demo;
+
+import com.demo.model.OrderState;
+import com.demo.model.SagaEvent;
+import com.demo.model.Status;
+import com.demo.service.EventSourcedSagaStore;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Cost of rebuilding 1M sagas of the event-sourced store (saga.store=events) from their events, each saga having gone
+ * through the 6 steps of a completed order: streamed from saga_events and folded, then the fold alone.
+ * The events carry no payloads, so Jackson's share of a real rebuild is left out.
+ * Needs the Postgres database from docker-compose.
+ * Excluded from the regular build, run it with ./gradlew :order-saga-orchestrator:benchmark
+ */
+@Tag("benchmark")
+@EmbeddedKafka(partitions = 1)
+@SpringBootTest(properties = {
+        "saga.store=events",
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}"
+})
+class SagaReplayBenchmark {
+
+    private static final int SAGAS = 1_000_000;
+
+    // The steps of a completed order, by sequence: the status the event led to, the status the saga then waits in
+    private static final Status[][] STEPS = {
+            {Status.CREATED, Status.PENDING_AVAILABILITY_CONFIRMATION},
+            {Status.AVAILABILITY_CONFIRMED, Status.PENDING_SHIPMENT_ARRANGEMENT},
+            {Status.SHIPMENT_ARRANGED, Status.PENDING_PAYMENT},
+            {Status.PAYMENT_SUCCEEDED, Status.PAYMENT_SUCCEEDED},
+            {Status.PENDING_COMPLETION, Status.PENDING_COMPLETION},
+            {Status.COMPLETED, Status.COMPLETED}
+    };
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void replayFromDatabase() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(this.dataSource);
+        // 1. Generate the events on the server side
+        jdbcTemplate.execute("TRUNCATE saga_events");
+        StringBuilder steps = new StringBuilder();
+        for (int sequence = 0; sequence < STEPS.length; sequence++) {
+            if (sequence > 0) steps.append(", ");
+            steps.append("(").append(sequence).append(", '").append(STEPS[sequence][0]).append("', '").append(STEPS[sequence][1]).append("')");
+        }
+        jdbcTemplate.update("""
+                INSERT INTO saga_events (order_id, sequence, status, next_status, payload, failure_reason, timestamp)
+                SELECT o.id, s.sequence, s.status, s.next_status, NULL, NULL, now()
+                FROM (SELECT gen_random_uuid() AS id FROM generate_series(1, ?)) o
+                CROSS JOIN (VALUES %s) AS s(sequence, status, next_status)
+                """.formatted(steps), SAGAS);
+        jdbcTemplate.execute("ANALYZE saga_events");
+        // 2. Stream them in (order, sequence) order and fold each saga's events (a cursor needs a transaction)
+        jdbcTemplate.setFetchSize(10_000);
+        int[] completed = new int[1];
+        long start = System.nanoTime();
+        this.transactionTemplate.executeWithoutResult(status -> {
+            List<SagaEvent> events = new ArrayList<>();
+            jdbcTemplate.query("SELECT order_id, sequence, status, next_status, failure_reason, timestamp FROM saga_events ORDER BY order_id, sequence", resultSet -> {
+                SagaEvent event = new SagaEvent(resultSet.getObject(1, UUID.class), resultSet.getLong(2),
+                        Status.valueOf(resultSet.getString(3)), Status.valueOf(resultSet.getString(4)), null,
+                        resultSet.getString(5), resultSet.getTimestamp(6).toInstant());
+                if (!events.isEmpty() && !events.get(0).getOrderId().equals(event.getOrderId())) {
+                    if (EventSourcedSagaStore.fold(null, events).getStatus() == Status.COMPLETED) completed[0]++;
+                    events.clear();
+                }
+                events.add(event);
+            });
+            if (!events.isEmpty() && EventSourcedSagaStore.fold(null, events).getStatus() == Status.COMPLETED) completed[0]++;
+        });
+        long elapsed = System.nanoTime() - start;
+        assertEquals(SAGAS, completed[0]);
+        System.out.printf("%-12s %,d sagas in %,8.1f ms (%,8.0f sagas/s)%n", "database", SAGAS, elapsed / 1e6, SAGAS / (elapsed / 1e9));
+    }
+
+    @Test
+    void foldInMemory() {
+        // The same events, built in memory one saga at a time
+        Instant now = Instant.now();
+        List<SagaEvent> events = new ArrayList<>(STEPS.length);
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < SAGAS; i++) {
+            UUID orderId = UUID.randomUUID();
+            events.clear();
+            for (int sequence = 0; sequence < STEPS.length; sequence++) {
+                events.add(new SagaEvent(orderId, (long) sequence, STEPS[sequence][0], STEPS[sequence][1], null, null, now));
+            }
+            OrderState orderState = EventSourcedSagaStore.fold(null, events);
+            checksum += orderState.getVersion();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals((long) SAGAS * (STEPS.length - 1), checksum);
+        System.out.printf("%-12s %,d sagas in %,8.1f ms (%,8.0f sagas/s)%n", "in memory", SAGAS, elapsed / 1e6, SAGAS / (elapsed / 1e9));
+    }
+
+}
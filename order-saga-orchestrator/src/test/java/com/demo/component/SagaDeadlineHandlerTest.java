@@ -0,0 +1,109 @@
+package com.demo.component;
+
+import com.demo.common.command.Command;
+import com.demo.common.constant.Commands;
+import com.demo.common.payload.order.CancelOrderPayload;
+import com.demo.model.OrderState;
+import com.demo.model.Status;
+import com.demo.service.OrderStateService;
+import com.demo.service.OutboxCommandService;
+import com.demo.utility.CommandBuilder;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SagaDeadlineHandlerTest {
+
+    private final OrderStateService orderStateService = mock(OrderStateService.class);
+    private final OutboxCommandService outboxCommandService = mock(OutboxCommandService.class);
+    private final SagaDeadlineHandler handler = new SagaDeadlineHandler(this.orderStateService, this.outboxCommandService);
+
+    private final UUID orderId = UUID.randomUUID();
+
+    @Test
+    void retriesTheStepInTheSameStatus() {
+        OrderState expired = state(this.orderId, Status.PENDING_CANCELLATION, 4, "Out of stock");
+        when(this.orderStateService.expire(this.orderId, Status.PENDING_CANCELLATION, Status.PENDING_CANCELLATION, null))
+                .thenReturn(Optional.of(expired));
+
+        assertEquals(Optional.of(expired), this.handler.handle(this.orderId, Status.PENDING_CANCELLATION, 3, true));
+
+        // The step's command again, with the failure reason the saga kept and the first one's ID
+        ArgumentCaptor<Command> reissued = ArgumentCaptor.forClass(Command.class);
+        verify(this.outboxCommandService).reissue(reissued.capture());
+        verify(this.outboxCommandService, never()).create(any());
+        Command command = reissued.getValue();
+        assertEquals(Commands.CANCEL_ORDER, command.getName());
+        assertEquals("Out of stock", ((CancelOrderPayload) command.getPayload()).getReason());
+        assertEquals(CommandBuilder.cancelOrderCommand(this.orderId, "Out of stock").getId(), command.getId());
+    }
+
+    @Test
+    void movesTheStepToItsCompensation() {
+        String reason = "Timed out in " + Status.PENDING_AVAILABILITY_CONFIRMATION;
+        OrderState expired = state(this.orderId, Status.PENDING_CANCELLATION, 4, reason);
+        when(this.orderStateService.expire(this.orderId, Status.PENDING_AVAILABILITY_CONFIRMATION, Status.PENDING_CANCELLATION, reason))
+                .thenReturn(Optional.of(expired));
+
+        assertEquals(Optional.of(expired), this.handler.handle(this.orderId, Status.PENDING_AVAILABILITY_CONFIRMATION, 3, false));
+
+        // The compensation's command
+        Command command = this.dispatched();
+        assertEquals(Commands.CANCEL_ORDER, command.getName());
+        assertEquals(this.orderId, command.getCorrelationId());
+        assertEquals(reason, ((CancelOrderPayload) command.getPayload()).getReason());
+    }
+
+    @Test
+    void refusesToCompensateAStepThatCantBe() {
+        assertFalse(SagaDeadlineHandler.isCompensable(Status.PENDING_COMPLETION));
+        // The payment may still go through
+        assertFalse(SagaDeadlineHandler.isCompensable(Status.PENDING_PAYMENT));
+
+        assertThrows(IllegalArgumentException.class, () -> this.handler.handle(this.orderId, Status.PENDING_COMPLETION, 3, false));
+
+        verifyNoInteractions(this.orderStateService, this.outboxCommandService);
+    }
+
+    @Test
+    void skipsASagaThatIsNoLongerInTheStatus() {
+        when(this.orderStateService.expire(any(), any(), any(), any())).thenReturn(Optional.empty());
+
+        assertEquals(Optional.empty(), this.handler.handle(this.orderId, Status.PENDING_PAYMENT, 3, true));
+
+        verifyNoInteractions(this.outboxCommandService);
+    }
+
+    @Test
+    void rejectsASagaThatSteppedSinceTheDeadlineWasSet() {
+        // Back in the same status, but two steps later: the deadline is someone else's (e.g. another instance's retry)
+        when(this.orderStateService.expire(this.orderId, Status.PENDING_PAYMENT, Status.PENDING_PAYMENT, null))
+                .thenReturn(Optional.of(state(this.orderId, Status.PENDING_PAYMENT, 5, null)));
+
+        assertThrows(OptimisticLockingFailureException.class, () -> this.handler.handle(this.orderId, Status.PENDING_PAYMENT, 3, true));
+
+        verifyNoInteractions(this.outboxCommandService);
+    }
+
+    private Command dispatched() {
+        ArgumentCaptor<Command> command = ArgumentCaptor.forClass(Command.class);
+        verify(this.outboxCommandService).create(command.capture());
+        verify(this.outboxCommandService, never()).reissue(any());
+        return command.getValue();
+    }
+
+    private static OrderState state(UUID orderId, Status status, long version, String failureReason) {
+        OrderState orderState = OrderState.start(orderId, status, null, Instant.now());
+        orderState.setFailureReason(failureReason);
+        orderState.setVersion(version);
+        return orderState;
+    }
+
+}
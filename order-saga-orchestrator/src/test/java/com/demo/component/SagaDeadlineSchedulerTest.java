@@ -0,0 +1,209 @@
+package com.demo.component;
+
+import com.demo.component.SagaStateCache.PartitionsRevoked;
+import com.demo.model.OrderState;
+import com.demo.model.Status;
+import com.demo.model.WaitingSaga;
+import com.demo.service.OrderStateService.StepTaken;
+import com.demo.service.SagaStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SagaDeadlineSchedulerTest {
+
+    private static final long TIMEOUT_MS = 1_000;
+    private static final long TICK_MS = 10;
+    private static final long FAILURE_DELAY_MS = 500;
+
+    private final SagaStore sagaStore = mock(SagaStore.class);
+    private final SagaDeadlineHandler sagaDeadlineHandler = mock(SagaDeadlineHandler.class);
+    private final SagaStateCache sagaStateCache = mock(SagaStateCache.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private SagaDeadlineScheduler scheduler;
+    // When the sagas took their last step: after the wheel started, which the ticks are counted from
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        this.scheduler = new SagaDeadlineScheduler(this.sagaStore, this.sagaDeadlineHandler, this.sagaStateCache, this.meterRegistry);
+        ReflectionTestUtils.setField(this.scheduler, "timeoutMs", TIMEOUT_MS);
+        ReflectionTestUtils.setField(this.scheduler, "retries", 2);
+        ReflectionTestUtils.setField(this.scheduler, "tickMs", TICK_MS);
+        ReflectionTestUtils.setField(this.scheduler, "wheelSize", 64);
+        ReflectionTestUtils.setField(this.scheduler, "rebuildBatchSize", 2);
+        ReflectionTestUtils.setField(this.scheduler, "failureDelayMs", FAILURE_DELAY_MS);
+        this.scheduler.init();
+        this.now = System.currentTimeMillis();
+        when(this.sagaStateCache.isAssigned(any())).thenReturn(true);
+    }
+
+    @Test
+    void retriesTheStepThenCompensatesIt() {
+        UUID orderId = UUID.randomUUID();
+        this.scheduler.onStep(step(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, 3, this.now));
+        when(this.sagaDeadlineHandler.handle(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, 3, true))
+                .thenReturn(Optional.of(state(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, 4, this.now + TIMEOUT_MS)));
+        when(this.sagaDeadlineHandler.handle(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, 4, true))
+                .thenReturn(Optional.of(state(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, 5, this.now + 2 * TIMEOUT_MS)));
+        when(this.sagaDeadlineHandler.handle(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, 5, false))
+                .thenReturn(Optional.of(state(orderId, Status.PENDING_CANCELLATION, 6, this.now + 3 * TIMEOUT_MS)));
+
+        this.scheduler.tick(this.now + TIMEOUT_MS - 5 * TICK_MS);
+        verifyNoInteractions(this.sagaDeadlineHandler);
+
+        for (int deadline = 1; deadline <= 4; deadline++) this.scheduler.tick(this.now + deadline * TIMEOUT_MS);
+
+        // Two retries, then the compensation, whose own step starts over with its retries
+        InOrder inOrder = inOrder(this.sagaDeadlineHandler);
+        inOrder.verify(this.sagaDeadlineHandler).handle(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, 3, true);
+        inOrder.verify(this.sagaDeadlineHandler).handle(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, 4, true);
+        inOrder.verify(this.sagaDeadlineHandler).handle(orderId, Status.PENDING_SHIPMENT_ARRANGEMENT, 5, false);
+        inOrder.verify(this.sagaDeadlineHandler).handle(orderId, Status.PENDING_CANCELLATION, 6, true);
+        assertEquals(4, this.meterRegistry.get("saga.deadline.expired").counter().count());
+    }
+
+    @Test
+    void givesUpOnAStepThatCantBeCompensated() {
+        ReflectionTestUtils.setField(this.scheduler, "retries", 0);
+        this.scheduler.onStep(step(UUID.randomUUID(), Status.PENDING_PAYMENT, 3, this.now));
+
+        this.scheduler.tick(this.now + TIMEOUT_MS);
+        this.scheduler.tick(this.now + 10 * TIMEOUT_MS);
+
+        verifyNoInteractions(this.sagaDeadlineHandler);
+        assertEquals(0, this.pending());
+    }
+
+    @Test
+    void dropsTheDeadlineOfASagaThatMovedOn() {
+        UUID orderId = UUID.randomUUID();
+        this.scheduler.onStep(step(orderId, Status.PENDING_PAYMENT, 3, this.now));
+        when(this.sagaDeadlineHandler.handle(orderId, Status.PENDING_PAYMENT, 3, true))
+                .thenThrow(new OptimisticLockingFailureException("Order " + orderId + " changed since version 3"));
+
+        this.scheduler.tick(this.now + TIMEOUT_MS);
+        this.scheduler.tick(this.now + 10 * TIMEOUT_MS);
+
+        // Its step set the deadline it has now (or none)
+        verify(this.sagaDeadlineHandler, times(1)).handle(any(), any(), anyLong(), anyBoolean());
+        assertEquals(0, this.pending());
+    }
+
+    @Test
+    void handlesTheDeadlineAgainAfterAFailure() {
+        UUID orderId = UUID.randomUUID();
+        this.scheduler.onStep(step(orderId, Status.PENDING_PAYMENT, 3, this.now));
+        when(this.sagaDeadlineHandler.handle(orderId, Status.PENDING_PAYMENT, 3, true))
+                .thenThrow(new DataAccessResourceFailureException("Connection refused"))
+                .thenReturn(Optional.empty());
+
+        long expiry = this.now + TIMEOUT_MS;
+        this.scheduler.tick(expiry);
+        verify(this.sagaDeadlineHandler, times(1)).handle(orderId, Status.PENDING_PAYMENT, 3, true);
+        assertEquals(1, this.pending());
+
+        this.scheduler.tick(expiry + FAILURE_DELAY_MS - 5 * TICK_MS);
+        verify(this.sagaDeadlineHandler, times(1)).handle(orderId, Status.PENDING_PAYMENT, 3, true);
+
+        // The same attempt again, after the delay
+        this.scheduler.tick(expiry + FAILURE_DELAY_MS);
+        verify(this.sagaDeadlineHandler, times(2)).handle(orderId, Status.PENDING_PAYMENT, 3, true);
+        assertEquals(0, this.pending());
+    }
+
+    @Test
+    void cancelsTheDeadlineOfASagaThatStopsWaiting() {
+        UUID orderId = UUID.randomUUID();
+        this.scheduler.onStep(step(orderId, Status.PENDING_PAYMENT, 3, this.now));
+        this.scheduler.onStep(step(orderId, Status.CANCELLED, 4, this.now));
+
+        this.scheduler.tick(this.now + TIMEOUT_MS);
+
+        verifyNoInteractions(this.sagaDeadlineHandler);
+        assertEquals(0, this.pending());
+    }
+
+    @Test
+    void rebuildsTheDeadlinesOfTheAssignedPartitionsOnly() {
+        UUID first = new UUID(0, 1);
+        UUID second = new UUID(0, 2);
+        UUID third = new UUID(0, 3);
+        when(this.sagaStateCache.partitionOf(first)).thenReturn(0);
+        when(this.sagaStateCache.partitionOf(second)).thenReturn(1);
+        when(this.sagaStateCache.partitionOf(third)).thenReturn(0);
+        // Two pages of two
+        when(this.sagaStore.findWaiting(SagaDeadlineHandler.WAITING, new UUID(0, 0), 2)).thenReturn(List.of(
+                new WaitingSaga(first, Status.PENDING_PAYMENT, 3, Instant.ofEpochMilli(this.now)),
+                new WaitingSaga(second, Status.PENDING_PAYMENT, 3, Instant.ofEpochMilli(this.now))));
+        when(this.sagaStore.findWaiting(SagaDeadlineHandler.WAITING, second, 2)).thenReturn(List.of(
+                new WaitingSaga(third, Status.PENDING_COMPLETION, 7, Instant.ofEpochMilli(this.now))));
+        when(this.sagaDeadlineHandler.handle(any(), any(), anyLong(), anyBoolean())).thenReturn(Optional.empty());
+
+        this.scheduler.rebuild(Set.of(0));
+        assertEquals(2, this.pending());
+
+        this.scheduler.tick(this.now + TIMEOUT_MS);
+        verify(this.sagaDeadlineHandler).handle(first, Status.PENDING_PAYMENT, 3, true);
+        verify(this.sagaDeadlineHandler).handle(third, Status.PENDING_COMPLETION, 7, true);
+        verify(this.sagaDeadlineHandler, never()).handle(eq(second), any(), anyLong(), anyBoolean());
+    }
+
+    @Test
+    void dropsTheDeadlinesOfRevokedPartitions() {
+        UUID kept = UUID.randomUUID();
+        UUID revoked = UUID.randomUUID();
+        when(this.sagaStateCache.partitionOf(kept)).thenReturn(0);
+        when(this.sagaStateCache.partitionOf(revoked)).thenReturn(1);
+        this.scheduler.onStep(step(kept, Status.PENDING_PAYMENT, 3, this.now));
+        this.scheduler.onStep(step(revoked, Status.PENDING_PAYMENT, 3, this.now));
+        when(this.sagaDeadlineHandler.handle(any(), any(), anyLong(), anyBoolean())).thenReturn(Optional.empty());
+
+        this.scheduler.onPartitionsRevoked(new PartitionsRevoked(Set.of(1)));
+        assertEquals(1, this.pending());
+
+        this.scheduler.tick(this.now + TIMEOUT_MS);
+        verify(this.sagaDeadlineHandler).handle(kept, Status.PENDING_PAYMENT, 3, true);
+        verify(this.sagaDeadlineHandler, never()).handle(eq(revoked), any(), anyLong(), anyBoolean());
+    }
+
+    @Test
+    void ignoresTheSagasOfPartitionsItDoesNotHold() {
+        UUID orderId = UUID.randomUUID();
+        when(this.sagaStateCache.isAssigned(orderId)).thenReturn(false);
+
+        this.scheduler.onStep(step(orderId, Status.PENDING_PAYMENT, 3, this.now));
+
+        assertEquals(0, this.pending());
+    }
+
+    private double pending() {
+        return this.meterRegistry.get("saga.deadline.pending").gauge().value();
+    }
+
+    private static StepTaken step(UUID orderId, Status status, long version, long at) {
+        return new StepTaken(state(orderId, status, version, at), status);
+    }
+
+    private static OrderState state(UUID orderId, Status status, long version, long at) {
+        OrderState orderState = OrderState.start(orderId, status, null, Instant.ofEpochMilli(at));
+        orderState.setVersion(version);
+        return orderState;
+    }
+
+}
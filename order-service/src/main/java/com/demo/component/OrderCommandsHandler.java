@@ -25,7 +25,7 @@ import java.util.UUID;
 @Component
 @Slf4j
 @RequiredArgsConstructor
-@KafkaListener(topics = Topics.ORDER_COMMANDS_TOPIC)
+@KafkaListener(topics = Topics.ORDER_COMMANDS_TOPIC, autoStartup = "#{'${kafka.listener.mode:record}' == 'record'}")
 public class OrderCommandsHandler {
 
     private final OrderService orderService;
@@ -37,7 +37,7 @@ public class OrderCommandsHandler {
     public void handle(CompleteOrderCommand completeOrderCommand) {
         log.info("---> Received CompleteOrderCommand <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(completeOrderCommand.getId())) return;
+        if (this.consumedMessageService.isDuplicate(completeOrderCommand)) return;
         UUID correlationId = completeOrderCommand.getCorrelationId();
         // 1. Apply final state to the Order
         this.orderService.updateStatus(correlationId, Status.COMPLETED);
@@ -51,7 +51,7 @@ public class OrderCommandsHandler {
     public void handle(CancelOrderCommand cancelOrderCommand) {
         log.info("---> Received CancelOrderCommand <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(cancelOrderCommand.getId())) return;
+        if (this.consumedMessageService.isDuplicate(cancelOrderCommand)) return;
         // Uncomment to test error handling
         // causeException(1); // 1 - retryable, 0 - non-retryable
         UUID correlationId = cancelOrderCommand.getCorrelationId();
@@ -1,13 +1,28 @@
 package com.demo.service;
 
 import com.demo.common.Message;
+import com.demo.common.serde.BinaryMessageSerializer;
+import com.demo.common.serde.MessageHeaders;
+import com.demo.common.serde.UuidKeySerializer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.mapping.AbstractJavaTypeMapper;
+import org.springframework.kafka.support.serializer.JsonSerializer;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -16,10 +31,37 @@ import java.util.concurrent.CompletableFuture;
 public class PublisherService {
 
     private final KafkaTemplate<String, Message> kafkaTemplate;
+    private final KafkaProperties kafkaProperties;
+
+    // Produces the same bytes as the configured value serializer; with JSON, the type goes into a header of its own
+    private Serializer<Message> serializer;
+
+    // Sends already serialized messages as they are (passthrough mode)
+    private DefaultKafkaProducerFactory<String, byte[]> rawProducerFactory;
+    private KafkaTemplate<String, byte[]> rawKafkaTemplate;
+
+    @PostConstruct
+    public void init() {
+        Map<String, Object> producerProperties = this.kafkaProperties.buildProducerProperties(null);
+        if (BinaryMessageSerializer.class.equals(this.kafkaProperties.getProducer().getValueSerializer())) {
+            BinaryMessageSerializer binarySerializer = new BinaryMessageSerializer();
+            binarySerializer.configure(producerProperties, false);
+            this.serializer = binarySerializer;
+        } else {
+            this.serializer = new JsonSerializer<Message>().noTypeInfo();
+        }
+        // Keys must be serialized like the template does, they decide the partition
+        Serializer<String> keySerializer = UuidKeySerializer.class.equals(this.kafkaProperties.getProducer().getKeySerializer())
+                ? new UuidKeySerializer() : new StringSerializer();
+        this.rawProducerFactory = new DefaultKafkaProducerFactory<>(producerProperties, keySerializer, new ByteArraySerializer());
+        this.rawKafkaTemplate = new KafkaTemplate<>(this.rawProducerFactory);
+    }
 
     public CompletableFuture<SendResult<String, Message>> publish(String topic, String correlationId, Message message) {
         // Create the Kafka record with topic, key, and payload
         ProducerRecord<String, Message> record = new ProducerRecord<>(topic, correlationId, message);
+        // Stamp what the record holds, so consumers can route it without deserializing it
+        MessageHeaders.stamp(record.headers(), message);
 
         // Send the message asynchronously
         CompletableFuture<SendResult<String, Message>> future = this.kafkaTemplate.send(record);
@@ -39,4 +81,35 @@ public class PublisherService {
         return future;
     }
 
+    public byte[] serialize(Message message) {
+        return this.serializer.serialize(null, message);
+    }
+
+    public CompletableFuture<SendResult<String, byte[]>> publishRaw(String topic, String correlationId, byte[] payload, String typeId) {
+        return this.publishRaw(topic, correlationId, payload, typeId, null);
+    }
+
+    public CompletableFuture<SendResult<String, byte[]>> publishRaw(String topic, String correlationId, byte[] payload, String typeId, UUID id) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, correlationId, payload);
+        // The consumers' JsonDeserializer picks the target class from this header (binary messages carry their type ID)
+        record.headers().add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, typeId.getBytes(StandardCharsets.UTF_8));
+        MessageHeaders.stamp(record.headers(), id, typeId, correlationId);
+
+        CompletableFuture<SendResult<String, byte[]>> future = this.rawKafkaTemplate.send(record);
+        future.whenComplete((result, exception) -> {
+            String name = typeId.substring(typeId.lastIndexOf('.') + 1);
+            if (exception == null) {
+                log.info("---> {} was published to {} <---", name, topic);
+            } else {
+                log.error("---> Failed to publish {} to {} <---", name, topic, exception);
+            }
+        });
+        return future;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.rawProducerFactory.destroy();
+    }
+
 }
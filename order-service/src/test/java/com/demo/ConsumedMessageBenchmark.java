@@ -0,0 +1,83 @@
+package com.demo;
+
+import com.demo.common.event.Event;
+import com.demo.model.ConsumedMessage;
+import com.demo.repository.ConsumedMessageRepository;
+import com.demo.service.ConsumedMessageService;
+import com.demo.utility.EventBuilder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Per-message cost of the idempotency check, for new and duplicate messages: the ON CONFLICT DO NOTHING insert
+ * against the previous saveAndFlush + DataIntegrityViolationException approach. Each check runs in its own
+ * transaction, like in the handlers (duplicates of recent messages are answered by the in-memory cache before the insert).
+ * Needs the Postgres database from docker-compose.
+ * Excluded from the regular build, run it with ./gradlew :order-service:benchmark
+ */
+@Tag("benchmark")
+@EmbeddedKafka(partitions = 1)
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}"
+})
+class ConsumedMessageBenchmark {
+
+    private static final int MESSAGES = 5_000;
+    private static final int WARMUP = 1_000;
+
+    @Autowired
+    private ConsumedMessageService consumedMessageService;
+
+    @Autowired
+    private ConsumedMessageRepository consumedMessageRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void insertOnConflict() {
+        this.measure("on conflict", event -> this.transactionTemplate.executeWithoutResult(status -> this.consumedMessageService.isDuplicate(event)));
+    }
+
+    @Test
+    void catchConstraintViolation() {
+        this.measure("exception", event -> {
+            try {
+                // The previous check; a duplicate marks the transaction rollback-only, so it ends with an exception either way
+                this.transactionTemplate.executeWithoutResult(status -> this.consumedMessageRepository.saveAndFlush(new ConsumedMessage(event.getId(), event.getTimestamp(), null, null, null)));
+            } catch (DataIntegrityViolationException e) {
+                // duplicate
+            }
+        });
+    }
+
+    private void measure(String approach, Consumer<Event> check) {
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < WARMUP + MESSAGES; i++) events.add(EventBuilder.orderCompletedEvent(UUID.randomUUID()));
+        // 1. New messages
+        events.subList(0, WARMUP).forEach(check);
+        long start = System.nanoTime();
+        events.subList(WARMUP, events.size()).forEach(check);
+        long fresh = System.nanoTime() - start;
+        // 2. The same messages again
+        events.subList(0, WARMUP).forEach(check);
+        start = System.nanoTime();
+        events.subList(WARMUP, events.size()).forEach(check);
+        long duplicate = System.nanoTime() - start;
+        System.out.printf("%-12s new: %,8.1f us/msg, duplicate: %,8.1f us/msg%n", approach,
+                fresh / 1e3 / MESSAGES, duplicate / 1e3 / MESSAGES);
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.demo;
+
+import com.demo.common.constant.Topics;
+import com.demo.common.event.Event;
+import com.demo.common.journal.FsyncPolicy;
+import com.demo.common.journal.SegmentedJournal;
+import com.demo.service.OutboxEventService;
+import com.demo.service.PublisherService;
+import com.demo.utility.EventBuilder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compares the table outbox with the file journal: the same messages are written one per transaction,
+ * then relayed to an embedded Kafka broker. Needs the Postgres database from docker-compose.
+ * Excluded from the regular build, run it with ./gradlew :order-service:benchmark
+ */
+@Tag("benchmark")
+@EmbeddedKafka(partitions = 3, topics = Topics.ORDER_EVENTS_TOPIC)
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.producer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.kafka.consumer.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        // Measure the relay itself rather than the after-commit shortcut
+        "outbox.relay.fast-path.enabled=false"
+})
+class OutboxStoreBenchmark {
+
+    private static final int MESSAGES = 20_000;
+
+    @Autowired
+    private OutboxEventService outboxEventService;
+
+    @Autowired
+    private PublisherService publisherService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void tableOutbox() throws InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            Event event = EventBuilder.orderCompletedEvent(UUID.randomUUID());
+            this.transactionTemplate.executeWithoutResult(status -> this.outboxEventService.create(event));
+        }
+        long written = System.nanoTime();
+        // The poller claims, publishes and marks the rows in the background
+        while (this.outboxEventService.findOldestUnpublished() != null) {
+            Thread.sleep(10);
+        }
+        report("table", start, written, System.nanoTime());
+    }
+
+    @Test
+    void journalOutbox() throws IOException {
+        try (SegmentedJournal journal = new SegmentedJournal(this.directory, 64 << 20, FsyncPolicy.INTERVAL, 100)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < MESSAGES; i++) {
+                Event event = EventBuilder.orderCompletedEvent(UUID.randomUUID());
+                // Same (otherwise empty) transaction as above, the journal is appended outside of it
+                this.transactionTemplate.executeWithoutResult(status -> append(journal, this.publisherService.serialize(event)));
+            }
+            journal.flush();
+            long written = System.nanoTime();
+            // Relay in batches the way JournalOutbox does
+            String typeId = EventBuilder.orderCompletedEvent(UUID.randomUUID()).getClass().getName();
+            List<CompletableFuture<?>> sent = new ArrayList<>();
+            long position = journal.acknowledgedPosition();
+            SegmentedJournal.Entry entry;
+            while ((entry = journal.read(position)) != null) {
+                sent.add(this.publisherService.publishRaw(Topics.ORDER_EVENTS_TOPIC, String.valueOf(position), entry.payload(), typeId));
+                position = entry.nextPosition();
+                if (sent.size() == 500 || journal.read(position) == null) {
+                    CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).join();
+                    journal.acknowledge(position);
+                    sent.clear();
+                }
+            }
+            report("journal", start, written, System.nanoTime());
+        }
+    }
+
+    private static void append(SegmentedJournal journal, byte[] payload) {
+        try {
+            journal.append(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void report(String store, long start, long written, long relayed) {
+        System.out.printf("%-8s writes: %,10.0f msg/s, write + relay: %,10.0f msg/s%n", store,
+                MESSAGES / ((written - start) / 1e9), MESSAGES / ((relayed - start) / 1e9));
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.demo;
+
+import com.demo.common.Message;
+import com.demo.common.dto.AddressDTO;
+import com.demo.common.dto.OrderProductDTO;
+import com.demo.common.event.Event;
+import com.demo.common.serde.BinaryMessageSerializer;
+import com.demo.common.serde.MixedMessageDeserializer;
+import com.demo.common.serde.SerdeConfig;
+import com.demo.model.dto.OrderCreatedResponse;
+import com.demo.utility.EventBuilder;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Size and (de)serialization cost of an OrderCreatedEvent, JSON (with type headers, as configured) against the binary format.
+ * Excluded from the regular build, run it with ./gradlew :order-service:benchmark
+ */
+@Tag("benchmark")
+class SerdeBenchmark {
+
+    private static final int MESSAGES = 200_000;
+    private static final int WARMUP = 50_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void json() {
+        JsonDeserializer<Message> deserializer = new JsonDeserializer<>();
+        deserializer.configure(Map.of(JsonDeserializer.TRUSTED_PACKAGES, "*"), false);
+        this.measure("json", new JsonSerializer<>(), deserializer);
+    }
+
+    @Test
+    void binary() {
+        Map<String, Object> configs = Map.of(SerdeConfig.SCHEMA_REGISTRY_PATH, this.directory.resolve("registry.txt").toString(),
+                JsonDeserializer.TRUSTED_PACKAGES, "*");
+        BinaryMessageSerializer serializer = new BinaryMessageSerializer();
+        serializer.configure(configs, false);
+        MixedMessageDeserializer deserializer = new MixedMessageDeserializer();
+        deserializer.configure(configs, false);
+        this.measure("binary", serializer, deserializer);
+    }
+
+    private void measure(String format, Serializer<Message> serializer, Deserializer<Message> deserializer) {
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < WARMUP + MESSAGES; i++) events.add(orderCreatedEvent());
+        Headers[] headers = new Headers[events.size()];
+        for (int i = 0; i < headers.length; i++) headers[i] = new RecordHeaders();
+        byte[][] data = new byte[events.size()][];
+        // 1. Serialize
+        for (int i = 0; i < WARMUP; i++) data[i] = serializer.serialize("topic", headers[i], events.get(i));
+        long start = System.nanoTime();
+        for (int i = WARMUP; i < events.size(); i++) data[i] = serializer.serialize("topic", headers[i], events.get(i));
+        long serialized = System.nanoTime() - start;
+        // 2. Deserialize (the JSON type header was added by the serializer)
+        for (int i = 0; i < WARMUP; i++) deserializer.deserialize("topic", headers[i], data[i]);
+        start = System.nanoTime();
+        for (int i = WARMUP; i < events.size(); i++) deserializer.deserialize("topic", headers[i], data[i]);
+        long deserialized = System.nanoTime() - start;
+        System.out.printf("%-8s size: %4d bytes, serialize: %,6.2f us/msg, deserialize: %,6.2f us/msg%n", format,
+                data[WARMUP].length, serialized / 1e3 / MESSAGES, deserialized / 1e3 / MESSAGES);
+    }
+
+    private static Event orderCreatedEvent() {
+        OrderCreatedResponse response = new OrderCreatedResponse();
+        response.setOrderId(UUID.randomUUID());
+        response.setCustomerId(UUID.randomUUID().toString());
+        response.setProducts(List.of(new OrderProductDTO(UUID.randomUUID(), 2, new BigDecimal("19.99")),
+                new OrderProductDTO(UUID.randomUUID(), 1, new BigDecimal("5.00"))));
+        response.setShippingAddress(new AddressDTO("1 Main St", "1000", "Sofia", "BG"));
+        response.setTotalAmount(new BigDecimal("44.98"));
+        response.setCurrency("EUR");
+        response.setPaymentMethodId("pm_card_visa");
+        return EventBuilder.orderCreatedEvent(response);
+    }
+
+}
@@ -1,47 +1,151 @@
 package com.demo.component;
 
-import com.demo.common.event.Event;
 import com.demo.model.OutboxEvent;
 import com.demo.model.Status;
-import com.demo.repository.OutboxEventRepository;
 import com.demo.service.OutboxEventService;
-import com.demo.service.PublisherService;
+import com.demo.service.TransactionalPublisherService;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "outbox.relay.engine", havingValue = "polling", matchIfMissing = true)
 public class OutboxPoller {
 
     private final OutboxEventService outboxEventService;
-    private final OutboxEventRepository outboxEventRepository;
-    private final PublisherService publisherService;
+    private final ObjectProvider<TransactionalPublisherService> transactionalPublisherService;
+    private final BrokerCircuitBreaker brokerCircuitBreaker;
 
-    @Scheduled(fixedDelay = 10000) // 10s
-    public void pollOutbox() {
-        List<OutboxEvent> outboxEvents = this.outboxEventRepository.findByStatus(Status.PENDING_PUBLISHING);
-        for (OutboxEvent outboxEvent : outboxEvents) {
-            String topic = outboxEvent.getTopic();
-            String correlationId = String.valueOf(outboxEvent.getCorrelationId());
-            Event event = outboxEvent.getEvent();
+    // All relay rounds run on this single thread, so wake-ups and fallback polls never overlap
+    private final ExecutorService relayExecutor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("outbox-relay").daemon().factory());
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    @Value("${outbox.relay.batch-size:500}")
+    private int batchSize;
+
+    @Value("${outbox.relay.fallback.min-delay-ms:1000}")
+    private long fallbackMinDelayMs;
+
+    @Value("${outbox.relay.fallback.max-delay-ms:30000}")
+    private long fallbackMaxDelayMs;
+
+    private volatile long fallbackDelayMs;
+    private volatile long nextFallbackPollAt;
+
+    /**
+     * Requests a relay round. Calls made while a round is already queued are folded into it.
+     */
+    public void wakeUp() {
+        if (this.wakeUpPending.compareAndSet(false, true)) {
+            this.relayExecutor.execute(() -> {
+                this.wakeUpPending.set(false);
+                this.pollOutbox();
+            });
+        }
+    }
+
+    /**
+     * Safety net for missed notifications (listener reconnecting, notify disabled, rows left by other instances' expired leases).
+     * The delay doubles while fallback polls find nothing and resets as soon as one of them has to relay something.
+     */
+    @Scheduled(fixedDelay = 1000) // 1s tick, the effective delay is adaptive
+    public void fallbackPoll() {
+        long now = System.currentTimeMillis();
+        if (now < this.nextFallbackPollAt) return;
+        // Don't queue further fallback rounds until this one has rescheduled itself
+        this.nextFallbackPollAt = Long.MAX_VALUE;
+        this.relayExecutor.execute(() -> {
+            int relayed = this.pollOutbox();
+            long delay = relayed > 0 || this.fallbackDelayMs == 0
+                    ? this.fallbackMinDelayMs
+                    : Math.min(this.fallbackDelayMs * 2, this.fallbackMaxDelayMs);
+            this.fallbackDelayMs = delay;
+            this.nextFallbackPollAt = System.currentTimeMillis() + delay;
+        });
+    }
 
+    private int pollOutbox() {
+        int relayed = 0;
+        try {
+            List<OutboxEvent> outboxEvents;
+            do {
+                // Leave the rows alone while the cluster is unreachable
+                if (!this.brokerCircuitBreaker.allowRequest()) break;
+                // Claim a bounded batch; rows claimed by other instances are skipped
+                outboxEvents = this.outboxEventService.claimBatch(this.batchSize);
+                if (outboxEvents.isEmpty()) break;
+                TransactionalPublisherService transactionalPublisher = this.transactionalPublisherService.getIfAvailable();
+                if (transactionalPublisher != null) {
+                    this.relayInTransaction(outboxEvents, transactionalPublisher);
+                } else {
+                    this.relay(outboxEvents);
+                }
+                relayed += outboxEvents.size();
+            } while (outboxEvents.size() == this.batchSize);
+        } catch (RuntimeException e) {
+            log.error("---> Outbox relay round failed <---", e);
+        }
+        return relayed;
+    }
+
+    private void relay(List<OutboxEvent> outboxEvents) {
+        long epoch = outboxEvents.getFirst().getLeaseEpoch();
+        List<CompletableFuture<Void>> sends = new ArrayList<>(outboxEvents.size());
+        Queue<UUID> published = new ConcurrentLinkedQueue<>();
+        Queue<UUID> failed = new ConcurrentLinkedQueue<>();
+        for (OutboxEvent outboxEvent : outboxEvents) {
             // Asynchronously publish the message
-            this.publisherService.publish(topic, correlationId, event)
+            sends.add(this.outboxEventService.send(outboxEvent)
                     .thenRun(() -> {
                         // Success: Mark as published
-                        this.outboxEventService.update(outboxEvent, Status.PUBLISHED);
+                        published.add(outboxEvent.getId());
                     })
                     .exceptionally(ex -> {
-                        // Failure: Mark as failed so it can be retried or investigated
-                        this.outboxEventService.update(outboxEvent, Status.PUBLISHING_FAILED);
+                        // Failure: Mark as failed so it is retried after a backoff
+                        failed.add(outboxEvent.getId());
                         return null;
-                    });
+                    }));
         }
+        // Wait for the batch to settle before claiming the next one, so memory stays flat whatever the backlog
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+        // Apply the whole batch's outcome at once
+        this.outboxEventService.acknowledge(published, epoch, Status.PUBLISHED);
+        this.outboxEventService.acknowledge(failed, epoch, Status.PUBLISHING_FAILED);
+        this.brokerCircuitBreaker.recordOutcome(published.size(), failed.size());
+    }
+
+    private void relayInTransaction(List<OutboxEvent> outboxEvents, TransactionalPublisherService transactionalPublisher) {
+        long epoch = outboxEvents.getFirst().getLeaseEpoch();
+        List<ProducerRecord<String, Object>> records = outboxEvents.stream().map(this.outboxEventService::toRecord).toList();
+        List<UUID> ids = outboxEvents.stream().map(OutboxEvent::getId).toList();
+        // All or nothing: the batch is marked right after the Kafka transaction commits, fenced by the claim's epoch,
+        // so a relay whose lease was taken over in the meantime can't touch the rows anymore
+        boolean committed = transactionalPublisher.publishAll(records);
+        this.outboxEventService.acknowledge(ids, epoch, committed ? Status.PUBLISHED : Status.PUBLISHING_FAILED);
+        this.brokerCircuitBreaker.recordOutcome(committed ? ids.size() : 0, committed ? 0 : ids.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.relayExecutor.shutdown();
     }
 
-}
\ No newline at end of file
+}
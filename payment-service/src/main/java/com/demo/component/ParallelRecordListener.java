@@ -0,0 +1,167 @@
+package com.demo.component;
+
+import com.demo.common.Message;
+import com.demo.common.constant.Topics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.backoff.BackOff;
+import org.springframework.util.backoff.BackOffExecution;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Parallel listener mode: every record is handed to a virtual thread right away, so how many are handled at once
+ * depends on max-in-flight (and the database), not on the number of partitions.
+ * Records with the same key (the correlation ID) are still handled one after the other, in offset order.
+ * Acks are asynchronous, and the container commits a partition's offset only up to its first record that isn't done yet.
+ * A failing record is retried with the error handler's back-off, then sent to the DLT, without holding up other keys.
+ * Every record is acknowledged once it is done, even if it couldn't be sent to the DLT (then it is logged as lost):
+ * a record left unacknowledged would keep its partition from committing past it.
+ * When no slot frees up within slot-timeout-ms, the containers are paused until half of the slots are free again,
+ * so the consumers keep polling within max.poll.interval.ms.
+ * Records of a partition complete out of order here, so duplicates are told apart by message ID only (no offset watermark).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "kafka.listener.mode", havingValue = "parallel")
+public class ParallelRecordListener {
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    private static final String LISTENER_ID_PREFIX = "parallel-";
+
+    private final RecordDispatcher recordDispatcher;
+    private final DeadLetterPublishingRecoverer deadLetterPublishingRecoverer;
+    private final BackOff retryBackOff;
+    private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+    // Key -> its last record handed out, the next one with that key is chained after it
+    private final Map<String, CompletableFuture<?>> tails = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicBoolean paused = new AtomicBoolean();
+
+    @Value("${kafka.listener.parallel.max-in-flight:256}")
+    private int maxInFlight;
+
+    @Value("${kafka.listener.parallel.slot-timeout-ms:10000}")
+    private long slotTimeoutMs;
+
+    private Semaphore inFlight;
+
+    @PostConstruct
+    public void init() {
+        this.inFlight = new Semaphore(this.maxInFlight);
+    }
+
+    @KafkaListener(id = LISTENER_ID_PREFIX + "payment-commands", idIsGroup = false, topics = Topics.PAYMENT_COMMANDS_TOPIC,
+            containerFactory = "parallelKafkaListenerContainerFactory")
+    public void handle(ConsumerRecord<String, Message> record, Acknowledgment acknowledgment) throws InterruptedException {
+        // 1. Wait for a free slot; meanwhile the container doesn't poll for more. If none frees up in time, the record goes out
+        // without one and the containers are paused (the rest of this poll included, see pauseImmediate) while the records in flight drain
+        boolean slot = this.inFlight.tryAcquire(this.slotTimeoutMs, TimeUnit.MILLISECONDS);
+        if (!slot) this.pause();
+        // 2. Chain the record after the previous one with the same key (records without a key keep their partition's order)
+        String key = record.key() != null ? record.key() : record.topic() + "-" + record.partition();
+        CompletableFuture<?> tail = this.tails.compute(key, (k, previous) -> (previous != null ? previous : DONE)
+                .handleAsync((result, exception) -> {
+                    try {
+                        this.handle(record);
+                    } catch (RuntimeException e) {
+                        log.error("---> Lost {}-{}@{}: it could not be sent to the DLT <---", record.topic(), record.partition(), record.offset(), e);
+                    } finally {
+                        acknowledgment.acknowledge();
+                    }
+                    return null;
+                }, this.executor));
+        // 3. Free the slot, and forget the key if nothing was chained after this record
+        tail.whenComplete((result, exception) -> {
+            if (slot) this.inFlight.release();
+            this.resumeIfDrained();
+            this.tails.remove(key, tail);
+        });
+    }
+
+    private void handle(ConsumerRecord<String, Message> record) {
+        BackOffExecution backOff = this.retryBackOff.start();
+        while (true) {
+            try {
+                this.recordDispatcher.dispatch(record);
+                return;
+            } catch (RuntimeException e) {
+                long interval = isRetryable(e) ? backOff.nextBackOff() : BackOffExecution.STOP;
+                if (interval != BackOffExecution.STOP && sleep(interval)) continue;
+                // Out of attempts, or interrupted while backing off: to the DLT (with the interrupt held back, so the send isn't cut short)
+                boolean interrupted = Thread.interrupted();
+                log.error("---> Sending {}-{}@{} to the DLT <---", record.topic(), record.partition(), record.offset(), e);
+                try {
+                    this.deadLetterPublishingRecoverer.accept(record, e);
+                } finally {
+                    if (interrupted) Thread.currentThread().interrupt();
+                }
+                return;
+            }
+        }
+    }
+
+    // Only parks this virtual thread; false if interrupted
+    private static boolean sleep(long interval) {
+        try {
+            Thread.sleep(interval);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void pause() {
+        if (!this.paused.compareAndSet(false, true)) return;
+        log.warn("---> No free slot after {} ms, pausing the parallel listeners <---", this.slotTimeoutMs);
+        this.containers().forEach(MessageListenerContainer::pause);
+    }
+
+    private void resumeIfDrained() {
+        if (this.inFlight.availablePermits() < this.maxInFlight / 2 || !this.paused.compareAndSet(true, false)) return;
+        log.info("---> Records in flight drained, resuming the parallel listeners <---");
+        this.containers().forEach(MessageListenerContainer::resume);
+    }
+
+    private List<MessageListenerContainer> containers() {
+        return this.kafkaListenerEndpointRegistry.getListenerContainers().stream()
+                .filter(container -> container.getListenerId() != null && container.getListenerId().startsWith(LISTENER_ID_PREFIX))
+                .toList();
+    }
+
+    // Same as the error handler: these fail the same way on every attempt
+    private static boolean isRetryable(RuntimeException e) {
+        return !(e instanceof DeserializationException
+                || e instanceof ClassCastException);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Lets the records in flight finish
+        this.executor.close();
+    }
+
+}
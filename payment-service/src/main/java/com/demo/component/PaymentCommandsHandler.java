@@ -21,7 +21,7 @@ import java.util.*;
 @Component
 @Slf4j
 @RequiredArgsConstructor
-@KafkaListener(topics = Topics.PAYMENT_COMMANDS_TOPIC)
+@KafkaListener(topics = Topics.PAYMENT_COMMANDS_TOPIC, autoStartup = "#{'${kafka.listener.mode:record}' == 'record'}")
 public class PaymentCommandsHandler {
 
     private final PaymentService paymentService;
@@ -33,7 +33,7 @@ public class PaymentCommandsHandler {
     public void handle(ProcessPaymentCommand processPaymentCommand) {
         log.info("---> Received ProcessPaymentCommand <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(processPaymentCommand.getId())) return;
+        if (this.consumedMessageService.isDuplicate(processPaymentCommand)) return;
         // TODO: implement legit payment solution
         UUID correlationId = processPaymentCommand.getCorrelationId();
         // This 'if' block simulates the response from a real payment gateway
@@ -13,7 +13,7 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "outbox_events")
+@Table(name = "outbox_events", indexes = @Index(name = "idx_outbox_events_status_timestamp", columnList = "status, timestamp"))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -32,10 +32,19 @@ public class OutboxEvent {
     @Column(name = "correlation_id", nullable = false)
     private UUID correlationId;
 
+    // Left empty in passthrough mode, where the serialized form is stored in payload instead
     @JdbcTypeCode(SqlTypes.JSON)
-    @Column(columnDefinition = "jsonb", nullable = false)
+    @Column(columnDefinition = "jsonb")
     private Event event;
 
+    // Exact bytes the relay sends (passthrough mode)
+    @Column(name = "payload")
+    private byte[] payload;
+
+    // Value of the __TypeId__ header sent along with the payload
+    @Column(name = "type_id")
+    private String typeId;
+
     @Column(nullable = false)
     private Instant timestamp;
 
@@ -43,4 +52,24 @@ public class OutboxEvent {
     @Column(nullable = false)
     private Status status;
 
+    // The relay instance currently holding the row
+    @Column(name = "locked_by")
+    private String lockedBy;
+
+    // Until when the claim is valid; expired claims can be taken over by other instances
+    @Column(name = "locked_until")
+    private Instant lockedUntil;
+
+    // Fencing token of the claim; acknowledgements of an older claim on the same row are ignored
+    @Column(name = "lease_epoch")
+    private Long leaseEpoch;
+
+    // Number of times the row has been handed to the producer
+    @Column(nullable = false)
+    private int attempts;
+
+    // Earliest time a PUBLISHING_FAILED row is retried
+    @Column(name = "next_attempt_at")
+    private Instant nextAttemptAt;
+
 }
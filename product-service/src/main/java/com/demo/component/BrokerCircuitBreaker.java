@@ -0,0 +1,93 @@
+package com.demo.component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pauses the outbox relay while the Kafka cluster is unreachable, instead of letting it burn through the backlog
+ * and push every row into backoff.
+ * Opens after a run of consecutive send failures; once the open period is over, the relay is only let through
+ * again after a cluster health probe succeeds (half-open).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BrokerCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final KafkaAdmin kafkaAdmin;
+
+    @Value("${outbox.circuit-breaker.failure-threshold:20}")
+    private int failureThreshold;
+
+    @Value("${outbox.circuit-breaker.open-ms:30000}")
+    private long openMs;
+
+    @Value("${outbox.circuit-breaker.probe-timeout-ms:5000}")
+    private long probeTimeoutMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openUntil;
+    private AdminClient adminClient;
+
+    public synchronized boolean allowRequest() {
+        if (this.state == State.CLOSED) return true;
+        if (System.currentTimeMillis() < this.openUntil) return false;
+        // Half-open: let the relay through only if the cluster answers
+        this.state = State.HALF_OPEN;
+        if (this.isClusterReachable()) {
+            log.info("---> Kafka cluster is reachable again, resuming the outbox relay <---");
+            this.state = State.CLOSED;
+            this.consecutiveFailures = 0;
+            return true;
+        }
+        this.open();
+        return false;
+    }
+
+    public synchronized void recordOutcome(int successes, int failures) {
+        if (successes > 0) this.consecutiveFailures = 0;
+        this.consecutiveFailures += failures;
+        if (this.state == State.CLOSED && this.consecutiveFailures >= this.failureThreshold) {
+            log.error("---> {} consecutive publish failures, pausing the outbox relay <---", this.consecutiveFailures);
+            this.open();
+        }
+    }
+
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    private void open() {
+        this.state = State.OPEN;
+        this.openUntil = System.currentTimeMillis() + this.openMs;
+    }
+
+    private boolean isClusterReachable() {
+        try {
+            if (this.adminClient == null) {
+                this.adminClient = AdminClient.create(this.kafkaAdmin.getConfigurationProperties());
+            }
+            return !this.adminClient.describeCluster().nodes().get(this.probeTimeoutMs, TimeUnit.MILLISECONDS).isEmpty();
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("---> Kafka cluster health probe failed: {} <---", e.toString());
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (this.adminClient != null) this.adminClient.close();
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.demo.component;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Keeps the daily partitions of outbox_events (see schema.sql) ahead of time and retires old ones.
+ * Retiring a partition detaches it, carries its unpublished rows over (they land in the default partition) and drops it,
+ * so cleanup costs the same however many rows a day produced.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PartitionManager {
+
+    private static final String TABLE = "outbox_events";
+    private static final String PARTITION_PREFIX = TABLE + "_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${outbox.partition.days-ahead:2}")
+    private int daysAhead;
+
+    @Value("${outbox.partition.retention-days:1}")
+    private int retentionDays;
+
+    // With the CDC relay the outbox is insert-only, rows are never marked PUBLISHED
+    @Value("${outbox.relay.engine:polling}")
+    private String relayEngine;
+
+    @Scheduled(fixedRate = 3600000) // 1h
+    public void maintainPartitions() {
+        // 1. Make sure the upcoming days have their partitions
+        this.jdbcTemplate.queryForList("SELECT create_" + TABLE + "_partitions(?)", this.daysAhead);
+        // 2. Retire the partitions that are past retention, by the database's date like the partitions themselves
+        LocalDate today = this.jdbcTemplate.queryForObject("SELECT current_date", LocalDate.class);
+        LocalDate oldestKept = today.minusDays(this.retentionDays);
+        for (String partition : this.findDailyPartitions()) {
+            LocalDate day = LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+            if (day.isBefore(oldestKept)) {
+                this.retire(partition);
+            }
+        }
+        // 3. The default partition only holds stragglers, so a plain delete is cheap there
+        if (this.isInsertOnly()) {
+            this.jdbcTemplate.update("DELETE FROM " + TABLE + "_default WHERE timestamp < now() - make_interval(days => ?)", this.retentionDays);
+        } else {
+            this.jdbcTemplate.update("DELETE FROM " + TABLE + "_default WHERE status = 'PUBLISHED'");
+        }
+    }
+
+    private List<String> findDailyPartitions() {
+        return this.jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE p.relname = ? AND c.relname LIKE ?
+                """, String.class, TABLE, PARTITION_PREFIX + "%");
+    }
+
+    private boolean isInsertOnly() {
+        return "cdc".equals(this.relayEngine);
+    }
+
+    private void retire(String partition) {
+        this.transactionTemplate.executeWithoutResult(status -> {
+            this.jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition);
+            // Everything past retention has long been streamed by the CDC relay
+            int carried = this.isInsertOnly() ? 0
+                    : this.jdbcTemplate.update("INSERT INTO " + TABLE + " SELECT * FROM " + partition + " WHERE status <> 'PUBLISHED'");
+            this.jdbcTemplate.execute("DROP TABLE " + partition);
+            log.info("---> Dropped partition {} ({} unpublished rows carried over) <---", partition, carried);
+        });
+    }
+
+}
@@ -24,7 +24,7 @@ import java.util.*;
 @Slf4j
 @Component
 @RequiredArgsConstructor
-@KafkaListener(topics = Topics.PRODUCT_COMMANDS_TOPIC)
+@KafkaListener(topics = Topics.PRODUCT_COMMANDS_TOPIC, autoStartup = "#{'${kafka.listener.mode:record}' == 'record'}")
 public class ProductCommandsHandler {
 
     private final ProductService productService;
@@ -36,7 +36,7 @@ public class ProductCommandsHandler {
     public void handle(ConfirmAvailabilityCommand confirmAvailabilityCommand) {
         log.info("---> Received ConfirmAvailabilityCommand <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(confirmAvailabilityCommand.getId())) return;
+        if (this.consumedMessageService.isDuplicate(confirmAvailabilityCommand)) return;
         UUID correlationId = confirmAvailabilityCommand.getCorrelationId();
         ConfirmAvailabilityPayload confirmAvailabilityPayload = (ConfirmAvailabilityPayload) confirmAvailabilityCommand.getPayload();
         List<ProductQuantityDTO> productsToCheck = confirmAvailabilityPayload.getProductsToCheck();
@@ -58,7 +58,7 @@ public class ProductCommandsHandler {
     public void handle(UpdateProductsCommand updateProductsCommand) {
         log.info("---> Received UpdateProductsCommand <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(updateProductsCommand.getId())) return;
+        if (this.consumedMessageService.isDuplicate(updateProductsCommand)) return;
         UUID correlationId = updateProductsCommand.getCorrelationId();
         UpdateProductsPayload updateProductsPayload = (UpdateProductsPayload) updateProductsCommand.getPayload();
         List<ProductQuantityDTO> productsToDecrement = updateProductsPayload.getProductsToDecrement();
@@ -2,29 +2,67 @@ package com.demo.config;
 
 import com.demo.common.Message;
 import com.demo.common.constant.Topics;
+import com.demo.component.ConsumedRecordInterceptor;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafkaRetryTopic;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.KafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
 import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.util.backoff.BackOff;
 import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.Map;
 
 @Configuration
+@EnableKafkaRetryTopic
 public class KafkaConfig {
 
     @Bean
-    public DefaultErrorHandler errorHandler (KafkaTemplate<String, Message> kafkaTemplate) {
-        DeadLetterPublishingRecoverer deadLetterPublishingRecoverer = new DeadLetterPublishingRecoverer(kafkaTemplate);
-        FixedBackOff fixedBackOff = new FixedBackOff(5000, 3);
-        DefaultErrorHandler errorHandler = new DefaultErrorHandler(deadLetterPublishingRecoverer, fixedBackOff);
+    public DeadLetterPublishingRecoverer deadLetterPublishingRecoverer(KafkaTemplate<String, Message> kafkaTemplate) {
+        return new DeadLetterPublishingRecoverer(kafkaTemplate);
+    }
+
+    @Bean
+    public BackOff retryBackOff() {
+        return new FixedBackOff(5000, 3);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "kafka.listener.mode", havingValue = "record", matchIfMissing = true)
+    public RetryTopicConfiguration retryTopicConfiguration(KafkaTemplate<String, Message> kafkaTemplate,
+                                                           @Value("${kafka.retry.attempts:3}") int attempts,
+                                                           @Value("${kafka.retry.delay-ms:5000}") long delay,
+                                                           @Value("${kafka.retry.multiplier:6}") double multiplier,
+                                                           @Value("${kafka.retry.max-delay-ms:30000}") long maxDelay) {
+        // A failing record moves on to <topic>-retry-5000, then <topic>-retry-30000, then <topic>-dlt (consumed by the dlt-service),
+        // so the records behind it in the main partition keep flowing while it waits
+        return RetryTopicConfigurationBuilder
+                .newInstance()
+                .maxAttempts(attempts)
+                .exponentialBackoff(delay, multiplier, maxDelay)
+                .retryTopicSuffix("-retry")
+                .dltSuffix("-dlt")
+                .autoStartDltHandler(false)
+                .autoCreateTopicsWith(2, (short) 3)
+                .includeTopic(Topics.PRODUCT_COMMANDS_TOPIC)
+                .create(kafkaTemplate);
+    }
+
+    @Bean
+    public DefaultErrorHandler errorHandler (DeadLetterPublishingRecoverer deadLetterPublishingRecoverer, BackOff retryBackOff) {
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(deadLetterPublishingRecoverer, retryBackOff);
         errorHandler.addRetryableExceptions();
         errorHandler.addNotRetryableExceptions();
         return errorHandler;
@@ -32,10 +70,37 @@ public class KafkaConfig {
 
     @Bean
     public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, Message>> kafkaListenerContainerFactory(
+            ConsumerFactory<String, Message> consumerFactory, DefaultErrorHandler errorHandler, ConsumedRecordInterceptor consumedRecordInterceptor) {
+        ConcurrentKafkaListenerContainerFactory<String, Message> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setCommonErrorHandler(errorHandler);
+        factory.setRecordInterceptor(consumedRecordInterceptor);
+        return factory;
+    }
+
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, Message>> batchKafkaListenerContainerFactory(
+            ConsumerFactory<String, Message> consumerFactory, DefaultErrorHandler errorHandler) {
+        // Used by BatchRecordListener (kafka.listener.mode=batch)
+        ConcurrentKafkaListenerContainerFactory<String, Message> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setCommonErrorHandler(errorHandler);
+        factory.setBatchListener(true);
+        return factory;
+    }
+
+    @Bean
+    public KafkaListenerContainerFactory<ConcurrentMessageListenerContainer<String, Message>> parallelKafkaListenerContainerFactory(
             ConsumerFactory<String, Message> consumerFactory, DefaultErrorHandler errorHandler) {
+        // Used by ParallelRecordListener (kafka.listener.mode=parallel): records are acknowledged from other threads,
+        // in any order, and the offsets are only committed up to the first record that isn't acknowledged yet
         ConcurrentKafkaListenerContainerFactory<String, Message> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
         factory.setCommonErrorHandler(errorHandler);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.getContainerProperties().setAsyncAcks(true);
+        // A pause (see ParallelRecordListener) holds back the rest of the poll too
+        factory.getContainerProperties().setPauseImmediate(true);
         return factory;
     }
 
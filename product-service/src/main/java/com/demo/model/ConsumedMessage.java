@@ -3,6 +3,7 @@ package com.demo.model;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -13,7 +14,9 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "consumed_messages")
+@Table(name = "consumed_messages", indexes = {
+        @Index(name = "idx_consumed_messages_partition_offset", columnList = "topic, kafka_partition, kafka_offset")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -27,4 +30,13 @@ public class ConsumedMessage {
     @Column(nullable = false)
     private Instant timestamp;
 
+    // Where the message was consumed from; the highest offset per partition is its dedup watermark
+    private String topic;
+
+    @Column(name = "kafka_partition")
+    private Integer kafkaPartition;
+
+    @Column(name = "kafka_offset")
+    private Long kafkaOffset;
+
 }
@@ -1,42 +1,267 @@
 package com.demo.service;
 
-import com.demo.model.ConsumedMessage;
+import com.demo.common.Message;
+import com.demo.common.dedup.RecentIdSet;
+import com.demo.component.ConsumedRecordInterceptor;
 import com.demo.repository.ConsumedMessageRepository;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.PreparedStatement;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ConsumedMessageService  {
 
+    private static final String TABLE = "consumed_messages";
+    private static final String PARTITION_PREFIX = TABLE + "_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMddHH").withZone(ZoneOffset.UTC);
+
+    // IDs recorded by claim() for the batch being handled on this thread, so the handlers' isDuplicate calls let them through
+    private static final ThreadLocal<Set<UUID>> CLAIMED = new ThreadLocal<>();
+
     private final ConsumedMessageRepository consumedMessageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ConsumedRecordInterceptor consumedRecordInterceptor;
+
+    // Highest committed offset per partition. Loaded once, then only advanced by this instance's commits:
+    // a stale (lower) value just means more records go through the ID check
+    private final Map<TopicPartition, Long> watermarks = new ConcurrentHashMap<>();
+
+    @Value("${consumed-messages.offset-watermark.enabled:true}")
+    private boolean offsetWatermarkEnabled;
+
+    @Value("${consumed-messages.retention-hours:24}")
+    private int retentionHours;
+
+    @Value("${consumed-messages.partition.hours-ahead:2}")
+    private int hoursAhead;
+
+    @Value("${consumed-messages.cache.max-size:100000}")
+    private int cacheMaxSize;
+
+    @Value("${consumed-messages.cache.ttl-ms:600000}")
+    private long cacheTtlMs;
+
+    // IDs whose consumption is committed, so redeliveries are recognized without a database round trip
+    private RecentIdSet recentIds;
+
+    @PostConstruct
+    public void init() {
+        this.recentIds = new RecentIdSet(this.cacheMaxSize, this.cacheTtlMs);
+    }
 
     @Transactional
-    public boolean isDuplicate(UUID id) {
-        try {
-            // Attempt to save the new message ID.
-            this.consumedMessageRepository.saveAndFlush(new ConsumedMessage(id, Instant.now()));
-            // No exception = new message
-            return false;
-        } catch (DataIntegrityViolationException e) {
-            // Exception = primary key violation = duplicate
+    public boolean isDuplicate(Message message) {
+        UUID id = message.getId();
+        // 1. Already recorded along with the rest of its poll (batch listener mode)
+        Set<UUID> claimed = CLAIMED.get();
+        if (claimed != null && claimed.remove(id)) return false;
+        ConsumerRecord<String, Message> record = this.currentRecord(message);
+        // 2. At or below the partition's watermark = replayed (e.g. after a rebalance), no need to ask the database.
+        // Relies on the records of a partition being handled in offset order
+        if (record != null && record.offset() <= this.watermark(record)) {
+            log.warn("---> Skipping replayed message: {} (offset {}) <---", id, record.offset());
+            return true;
+        }
+        // 3. Consumed recently by this instance = duplicate, no need to ask the database
+        if (this.isRecent(id)) {
+            log.warn("---> Skipping duplicate message: {} <---", id);
+            return true;
+        }
+        // 4. Attempt to record the message ID, along with its offset (the partition's next watermark).
+        // A conflict inserts nothing instead of throwing, so the surrounding transaction isn't marked rollback-only
+        Instant timestamp = message.getTimestamp() != null ? message.getTimestamp() : Instant.now();
+        int inserted = record != null
+                ? this.consumedMessageRepository.insertIfAbsent(id, timestamp, record.topic(), record.partition(), record.offset())
+                : this.consumedMessageRepository.insertIfAbsent(id, timestamp, null, null, null);
+        // No row inserted = the ID is already there = duplicate
+        if (inserted == 0) {
+            this.remember(id);
             log.warn("---> Skipping duplicate message: {} <---", id);
             return true;
         }
+        // 5. Remember the ID and offset once the consumption commits; if it rolls back, the redelivery has to get through
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remember(id);
+                    advance(record);
+                }
+            });
+        } else {
+            this.remember(id);
+            this.advance(record);
+        }
+        return false;
+    }
+
+    /**
+     * Batch listener counterpart of isDuplicate: records the IDs of a whole poll with a single multi-row insert.
+     * Returns the records to handle (duplicates are left out), which the handlers' isDuplicate calls then let through.
+     */
+    @Transactional
+    public List<ConsumerRecord<String, Message>> claim(List<ConsumerRecord<String, Message>> records) {
+        // 1. The checks that need no database round trip
+        List<ConsumerRecord<String, Message>> candidates = new ArrayList<>();
+        for (ConsumerRecord<String, Message> record : records) {
+            Message message = record.value();
+            if (message == null) {
+                candidates.add(record); // Could not be deserialized, left to the listener
+            } else if (this.offsetWatermarkEnabled && record.offset() <= this.watermark(record)) {
+                log.warn("---> Skipping replayed message: {} (offset {}) <---", message.getId(), record.offset());
+            } else if (this.isRecent(message.getId())) {
+                log.warn("---> Skipping duplicate message: {} <---", message.getId());
+            } else {
+                candidates.add(record);
+            }
+        }
+        // 2. Attempt to record all the IDs at once; the inserted ones are new
+        Set<UUID> inserted = this.insertAllIfAbsent(candidates);
+        List<ConsumerRecord<String, Message>> claimedRecords = new ArrayList<>();
+        Set<UUID> claimed = new HashSet<>();
+        for (ConsumerRecord<String, Message> record : candidates) {
+            // remove() = a second copy of the same message in this poll is a duplicate too
+            if (record.value() == null || inserted.remove(record.value().getId())) {
+                claimedRecords.add(record);
+                if (record.value() != null) claimed.add(record.value().getId());
+            } else {
+                log.warn("---> Skipping duplicate message: {} <---", record.value().getId());
+            }
+        }
+        // 3. Remember the IDs and offsets once the batch commits
+        CLAIMED.set(claimed);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    claimedRecords.stream().filter(record -> record.value() != null).forEach(record -> {
+                        remember(record.value().getId());
+                        advance(record);
+                    });
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    CLAIMED.remove();
+                }
+            });
+        }
+        return claimedRecords;
+    }
+
+    private Set<UUID> insertAllIfAbsent(List<ConsumerRecord<String, Message>> records) {
+        List<ConsumerRecord<String, Message>> messages = records.stream().filter(record -> record.value() != null).toList();
+        if (messages.isEmpty()) return new HashSet<>();
+        Object[] ids = messages.stream().map(record -> record.value().getId()).toArray();
+        Object[] timestamps = messages.stream().map(record -> record.value().getTimestamp() != null ? record.value().getTimestamp() : Instant.now()).map(Instant::toString).toArray();
+        Object[] topics = messages.stream().map(ConsumerRecord::topic).toArray();
+        Object[] partitions = messages.stream().map(ConsumerRecord::partition).toArray();
+        Object[] offsets = messages.stream().map(ConsumerRecord::offset).toArray();
+        return new HashSet<>(this.jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("""
+                    INSERT INTO consumed_messages (id, timestamp, topic, kafka_partition, kafka_offset)
+                    SELECT * FROM unnest(?, CAST(? AS timestamptz[]), ?, ?, ?)
+                    ON CONFLICT (id, timestamp) DO NOTHING
+                    RETURNING id
+                    """);
+            statement.setArray(1, connection.createArrayOf("uuid", ids));
+            statement.setArray(2, connection.createArrayOf("text", timestamps));
+            statement.setArray(3, connection.createArrayOf("varchar", topics));
+            statement.setArray(4, connection.createArrayOf("int4", partitions));
+            statement.setArray(5, connection.createArrayOf("int8", offsets));
+            return statement;
+        }, (resultSet, rowNum) -> resultSet.getObject(1, UUID.class)));
+    }
+
+    private ConsumerRecord<String, Message> currentRecord(Message message) {
+        if (!this.offsetWatermarkEnabled) return null;
+        // Only when called for the record being handled
+        ConsumerRecord<String, Message> record = this.consumedRecordInterceptor.current();
+        return record != null && record.value() == message ? record : null;
+    }
+
+    private long watermark(ConsumerRecord<String, Message> record) {
+        return this.watermarks.computeIfAbsent(new TopicPartition(record.topic(), record.partition()), partition -> {
+            Long offset = this.consumedMessageRepository.findWatermark(partition.topic(), partition.partition());
+            return offset != null ? offset : -1L;
+        });
+    }
+
+    private void advance(ConsumerRecord<String, Message> record) {
+        if (record == null) return;
+        this.watermarks.merge(new TopicPartition(record.topic(), record.partition()), record.offset(), Math::max);
     }
 
-    @Scheduled(fixedRate = 240000) // 4 min
-    // @Scheduled(cron = "0 0 3 * * 0") // 03:00 Every Sunday
+    private boolean isRecent(UUID id) {
+        synchronized (this.recentIds) {
+            return this.recentIds.contains(id, System.currentTimeMillis());
+        }
+    }
+
+    private void remember(UUID id) {
+        synchronized (this.recentIds) {
+            this.recentIds.add(id, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Keeps the hourly partitions of consumed_messages (see schema.sql) ahead of time and drops the ones past retention.
+     * Dropping a partition is a metadata operation, and duplicates of messages up to retention-hours old are always caught.
+     */
+    @Scheduled(fixedRate = 600000) // 10 min
     public void cleanUp() {
-        this.consumedMessageRepository.deleteAll();
+        // 1. Make sure every hour of the dedup window, and the upcoming ones, have their partitions
+        // (a failure here must not keep the expired ones from being dropped)
+        try {
+            this.jdbcTemplate.queryForList("SELECT create_" + TABLE + "_partitions(?, ?)", this.retentionHours, this.hoursAhead);
+        } catch (DataAccessException e) {
+            log.error("---> Failed to create the {} partitions <---", TABLE, e);
+        }
+        // 2. Drop the partitions whose hour is entirely past retention
+        Instant oldestKept = Instant.now().minus(this.retentionHours, ChronoUnit.HOURS);
+        for (String partition : this.findHourlyPartitions()) {
+            Instant hour = PARTITION_SUFFIX.parse(partition.substring(PARTITION_PREFIX.length()), Instant::from);
+            if (hour.plus(1, ChronoUnit.HOURS).isBefore(oldestKept)) {
+                this.jdbcTemplate.execute("DROP TABLE " + partition);
+                log.info("---> Dropped partition {} <---", partition);
+            }
+        }
+        // 3. The default partition only holds messages with unusual timestamps, so a plain delete is cheap there
+        this.jdbcTemplate.update("DELETE FROM " + TABLE + "_default WHERE timestamp < ?", oldestKept.atOffset(ZoneOffset.UTC));
+    }
+
+    private List<String> findHourlyPartitions() {
+        return this.jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE p.relname = ? AND c.relname LIKE ?
+                """, String.class, TABLE, PARTITION_PREFIX + "%");
     }
 
 }
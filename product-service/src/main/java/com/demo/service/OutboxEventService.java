@@ -2,21 +2,75 @@ package com.demo.service;
 
 import com.demo.common.constant.Topics;
 import com.demo.common.event.Event;
+import com.demo.common.serde.MessageHeaders;
+import com.demo.component.JournalOutbox;
 import com.demo.model.OutboxEvent;
 import com.demo.model.Status;
 import com.demo.repository.OutboxEventRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.kafka.support.mapping.AbstractJavaTypeMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class OutboxEventService {
 
+    private static final int ACK_CHUNK_SIZE = 1000;
+    // Rows leased at insert time by the fast path; relay claims always get a higher epoch
+    private static final long FAST_PATH_EPOCH = 0;
+
     private final OutboxEventRepository outboxEventRepository;
+    private final PublisherService publisherService;
+    private final ObjectProvider<JournalOutbox> journalOutbox;
+
+    // Fast-path send results, applied in bulk by flushAcknowledgements()
+    private final Queue<UUID> publishedAcks = new ConcurrentLinkedQueue<>();
+    private final Queue<UUID> returnedAcks = new ConcurrentLinkedQueue<>();
+    private final AtomicLong leaseEpochs = new AtomicLong(FAST_PATH_EPOCH);
+
+    @Value("${outbox.relay.instance-id:${spring.application.name}-${random.uuid}}")
+    private String instanceId;
+
+    @Value("${outbox.relay.lease-ms:180000}")
+    private long leaseMs;
+
+    @Value("${outbox.relay.fast-path.enabled:true}")
+    private boolean fastPathEnabled;
+
+    @Value("${outbox.relay.engine:polling}")
+    private String relayEngine;
+
+    @Value("${outbox.relay.delete-on-publish:false}")
+    private boolean deleteOnPublish;
+
+    @Value("${outbox.relay.passthrough:false}")
+    private boolean passthrough;
+
+    @Value("${outbox.retry.base-delay-ms:1000}")
+    private long retryBaseDelayMs;
+
+    @Value("${outbox.retry.max-delay-ms:300000}")
+    private long retryMaxDelayMs;
 
     @Transactional
     public void create(Event event) {
@@ -27,24 +81,156 @@ public class OutboxEventService {
         // 2. Set the destination topic (all events go to the same topic)
         outboxEvent.setTopic(Topics.PRODUCT_EVENTS_TOPIC);
         outboxEvent.setCorrelationId(event.getCorrelationId());
-        outboxEvent.setEvent(event);
+        if (this.passthrough) {
+            // Store the exact bytes the relay will send, so it doesn't have to go through Jackson again
+            outboxEvent.setPayload(this.publisherService.serialize(event));
+            outboxEvent.setTypeId(event.getClass().getName());
+        } else {
+            outboxEvent.setEvent(event);
+        }
         outboxEvent.setTimestamp(event.getTimestamp());
         outboxEvent.setStatus(Status.PENDING_PUBLISHING);
-        // 3. Save to database atomically
-        this.outboxEventRepository.saveAndFlush(outboxEvent);
+        // 3. With the journal store, the message goes to the journal instead of the table
+        JournalOutbox journal = this.journalOutbox.getIfAvailable();
+        if (journal != null) {
+            byte[] payload = outboxEvent.getPayload() != null ? outboxEvent.getPayload() : this.publisherService.serialize(event);
+            this.appendAfterCommit(journal, outboxEvent, payload);
+            return;
+        }
+        // 4. On the fast path, lease the row to this instance right away so the relay leaves it to the after-commit hook
+        // (the CDC relay publishes every insert, so there is no fast path with it)
+        boolean fastPath = this.fastPathEnabled && !"cdc".equals(this.relayEngine) && TransactionSynchronizationManager.isSynchronizationActive();
+        if (fastPath) {
+            outboxEvent.setLockedBy(this.instanceId);
+            outboxEvent.setLockedUntil(Instant.now().plusMillis(this.leaseMs));
+            outboxEvent.setLeaseEpoch(FAST_PATH_EPOCH);
+            outboxEvent.setAttempts(1);
+        }
+        // 5. Save to database atomically (flushed with the transaction, so the inserts of a batch go out together)
+        this.outboxEventRepository.save(outboxEvent);
+        // 6. Publish as soon as the surrounding transaction commits (nothing is sent if it rolls back)
+        if (fastPath) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishAfterCommit(outboxEvent);
+                }
+            });
+        }
+    }
+
+    private void appendAfterCommit(JournalOutbox journal, OutboxEvent outboxEvent, byte[] payload) {
+        String correlationId = String.valueOf(outboxEvent.getCorrelationId());
+        String typeId = outboxEvent.getTypeId() != null ? outboxEvent.getTypeId() : outboxEvent.getEvent().getClass().getName();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            journal.append(outboxEvent.getTopic(), correlationId, typeId, payload);
+            return;
+        }
+        // The journal can't roll back, so nothing is appended before the state change is committed
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                journal.append(outboxEvent.getTopic(), correlationId, typeId, payload);
+            }
+        });
     }
 
     @Transactional
-    @Scheduled(fixedRate = 120000) // 2 min
-    // @Scheduled(cron = "0 0 3 * * 0") // 03:00 Every Sunday
-    public void deletePublished() {
-        this.outboxEventRepository.deleteAll(this.outboxEventRepository.findByStatus(Status.PUBLISHED));
+    public List<OutboxEvent> claimBatch(int batchSize) {
+        // 1. Lock the oldest pending rows, skipping the ones other relays are working on
+        List<OutboxEvent> outboxEvents = this.outboxEventRepository.findClaimable(Instant.now(), batchSize);
+        if (outboxEvents.isEmpty()) return outboxEvents;
+        // 2. Lease them to this instance, so they stay claimed after the row locks are released on commit
+        Instant lockedUntil = Instant.now().plusMillis(this.leaseMs);
+        long epoch = this.leaseEpochs.incrementAndGet();
+        List<UUID> ids = outboxEvents.stream().map(OutboxEvent::getId).toList();
+        this.outboxEventRepository.lease(ids, this.instanceId, lockedUntil, epoch);
+        // 3. Reflect the lease on the (now detached) entities
+        for (OutboxEvent outboxEvent : outboxEvents) {
+            outboxEvent.setLockedBy(this.instanceId);
+            outboxEvent.setLockedUntil(lockedUntil);
+            outboxEvent.setLeaseEpoch(epoch);
+        }
+        return outboxEvents;
+    }
+
+    public CompletableFuture<?> send(OutboxEvent outboxEvent) {
+        String correlationId = String.valueOf(outboxEvent.getCorrelationId());
+        // Passthrough rows go out as stored
+        if (outboxEvent.getPayload() != null) {
+            return this.publisherService.publishRaw(outboxEvent.getTopic(), correlationId, outboxEvent.getPayload(), outboxEvent.getTypeId(), outboxEvent.getId());
+        }
+        return this.publisherService.publish(outboxEvent.getTopic(), correlationId, outboxEvent.getEvent());
     }
 
+    public ProducerRecord<String, Object> toRecord(OutboxEvent outboxEvent) {
+        String correlationId = String.valueOf(outboxEvent.getCorrelationId());
+        if (outboxEvent.getPayload() == null) {
+            ProducerRecord<String, Object> record = new ProducerRecord<>(outboxEvent.getTopic(), correlationId, outboxEvent.getEvent());
+            MessageHeaders.stamp(record.headers(), outboxEvent.getEvent());
+            return record;
+        }
+        ProducerRecord<String, Object> record = new ProducerRecord<>(outboxEvent.getTopic(), correlationId, outboxEvent.getPayload());
+        record.headers().add(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, outboxEvent.getTypeId().getBytes(StandardCharsets.UTF_8));
+        MessageHeaders.stamp(record.headers(), outboxEvent.getId(), outboxEvent.getTypeId(), correlationId);
+        return record;
+    }
+
+    private void publishAfterCommit(OutboxEvent outboxEvent) {
+        UUID id = outboxEvent.getId();
+        try {
+            this.send(outboxEvent)
+                    // Success: Mark as published; Failure: hand the row back to the relay
+                    .whenComplete((result, exception) -> (exception == null ? this.publishedAcks : this.returnedAcks).add(id));
+        } catch (RuntimeException e) {
+            // e.g. the producer could not fetch the topic metadata in time
+            this.returnedAcks.add(id);
+        }
+    }
+
+    /**
+     * Applies the outcome of a whole relay batch in one statement per status, instead of one transaction per message.
+     */
     @Transactional
-    public void update(OutboxEvent outboxEvent, Status newStatus) {
-        outboxEvent.setStatus(newStatus);
-        this.outboxEventRepository.saveAndFlush(outboxEvent);
+    public void acknowledge(Collection<UUID> ids, long epoch, Status newStatus) {
+        this.apply(new ArrayList<>(ids), epoch, newStatus);
+    }
+
+    @Scheduled(fixedDelay = 100) // 100ms
+    public void flushAcknowledgements() {
+        // Each statement runs in its own transaction; if one fails, its rows stay leased
+        // and the relay publishes them again once the lease expires
+        this.apply(drain(this.publishedAcks), FAST_PATH_EPOCH, Status.PUBLISHED);
+        this.apply(drain(this.returnedAcks), FAST_PATH_EPOCH, Status.PENDING_PUBLISHING);
+    }
+
+    private void apply(List<UUID> ids, long epoch, Status newStatus) {
+        // Keep each statement well below the bind parameter limit
+        for (int from = 0; from < ids.size(); from += ACK_CHUNK_SIZE) {
+            List<UUID> chunk = ids.subList(from, Math.min(from + ACK_CHUNK_SIZE, ids.size()));
+            if (newStatus == Status.PUBLISHED && this.deleteOnPublish) {
+                this.outboxEventRepository.deleteClaimed(chunk, this.instanceId, epoch);
+            } else if (newStatus == Status.PUBLISHING_FAILED) {
+                this.outboxEventRepository.fail(chunk, this.instanceId, epoch, this.retryBaseDelayMs, this.retryMaxDelayMs);
+            } else {
+                this.outboxEventRepository.release(chunk, this.instanceId, epoch, newStatus);
+            }
+        }
+    }
+
+    public long countFailed() {
+        return this.outboxEventRepository.countByStatus(Status.PUBLISHING_FAILED);
+    }
+
+    public Instant findOldestUnpublished() {
+        return this.outboxEventRepository.findOldestTimestamp(List.of(Status.PENDING_PUBLISHING, Status.PUBLISHING_FAILED));
+    }
+
+    private static List<UUID> drain(Queue<UUID> queue) {
+        List<UUID> ids = new ArrayList<>();
+        UUID id;
+        while ((id = queue.poll()) != null) ids.add(id);
+        return ids;
     }
 
 }
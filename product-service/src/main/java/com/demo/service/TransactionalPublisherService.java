@@ -0,0 +1,83 @@
+package com.demo.service;
+
+import com.demo.common.Message;
+import com.demo.common.serde.BinaryMessageSerializer;
+import com.demo.common.serde.UuidKeySerializer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes a whole relay batch in one Kafka transaction, so read_committed consumers see either all of it or none of it.
+ * Uses its own producer factory, the auto-configured (non-transactional) template stays in place for everything else.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "outbox.relay.transactional", havingValue = "true")
+public class TransactionalPublisherService {
+
+    private final KafkaProperties kafkaProperties;
+
+    // Must be unique per running instance; make it stable per replica (e.g. the pod name) to have the broker fence zombies across restarts
+    @Value("${outbox.relay.transactional-id-prefix:${spring.application.name}-outbox-${random.uuid}-}")
+    private String transactionalIdPrefix;
+
+    private DefaultKafkaProducerFactory<String, Object> producerFactory;
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @PostConstruct
+    public void init() {
+        // Messages go through the configured serializer (Jackson or the binary format), passthrough payloads are sent as they are
+        Serializer<?> messageSerializer = BinaryMessageSerializer.class.equals(this.kafkaProperties.getProducer().getValueSerializer())
+                ? new BinaryMessageSerializer() : new JsonSerializer<>();
+        DelegatingByTypeSerializer valueSerializer = new DelegatingByTypeSerializer(
+                Map.<Class<?>, Serializer<?>>of(byte[].class, new ByteArraySerializer(), Message.class, messageSerializer), true);
+        Serializer<String> keySerializer = UuidKeySerializer.class.equals(this.kafkaProperties.getProducer().getKeySerializer())
+                ? new UuidKeySerializer() : new StringSerializer();
+        this.producerFactory = new DefaultKafkaProducerFactory<>(this.kafkaProperties.buildProducerProperties(null),
+                keySerializer, valueSerializer);
+        this.producerFactory.setTransactionIdPrefix(this.transactionalIdPrefix);
+        this.kafkaTemplate = new KafkaTemplate<>(this.producerFactory);
+    }
+
+    /**
+     * @return whether the transaction committed; on false nothing from the batch is visible to read_committed consumers
+     */
+    public boolean publishAll(List<ProducerRecord<String, Object>> records) {
+        try {
+            // Commit flushes the batch and fails if any of its sends failed, in which case the transaction is aborted
+            this.kafkaTemplate.executeInTransaction(operations -> {
+                records.forEach(operations::send);
+                return null;
+            });
+            log.info("---> {} messages were published in one transaction <---", records.size());
+            return true;
+        } catch (RuntimeException e) {
+            log.error("---> Failed to publish {} messages in one transaction <---", records.size(), e);
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.producerFactory.destroy();
+    }
+
+}
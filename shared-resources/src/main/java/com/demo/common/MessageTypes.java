@@ -0,0 +1,83 @@
+package com.demo.common;
+
+import com.demo.common.command.Command;
+import com.demo.common.command.order.CancelOrderCommand;
+import com.demo.common.command.order.CompleteOrderCommand;
+import com.demo.common.command.payment.ProcessPaymentCommand;
+import com.demo.common.command.product.ConfirmAvailabilityCommand;
+import com.demo.common.command.product.UpdateProductsCommand;
+import com.demo.common.command.shipment.ArrangeShipmentCommand;
+import com.demo.common.command.shipment.CancelShipmentCommand;
+import com.demo.common.constant.Commands;
+import com.demo.common.constant.Events;
+import com.demo.common.event.order.OrderCancelledEvent;
+import com.demo.common.event.order.OrderCompletedEvent;
+import com.demo.common.event.order.OrderCreatedEvent;
+import com.demo.common.event.payment.PaymentFailedEvent;
+import com.demo.common.event.payment.PaymentSucceededEvent;
+import com.demo.common.event.product.AvailabilityConfirmedEvent;
+import com.demo.common.event.product.ProductsShortageEvent;
+import com.demo.common.event.product.ProductsUpdatedEvent;
+import com.demo.common.event.shipment.ArrangementFailedEvent;
+import com.demo.common.event.shipment.ShipmentArrangedEvent;
+import com.demo.common.event.shipment.ShipmentCancelledEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Message name (see Events and Commands) <-> message class, so a consumer can tell what a record holds from its headers.
+ */
+public final class MessageTypes {
+
+    private static final Map<String, Class<? extends Message>> CLASSES = Map.ofEntries(
+            // Events
+            Map.entry(Events.ORDER_CREATED, OrderCreatedEvent.class),
+            Map.entry(Events.ORDER_COMPLETED, OrderCompletedEvent.class),
+            Map.entry(Events.ORDER_CANCELLED, OrderCancelledEvent.class),
+            Map.entry(Events.PAYMENT_SUCCEEDED, PaymentSucceededEvent.class),
+            Map.entry(Events.PAYMENT_FAILED, PaymentFailedEvent.class),
+            Map.entry(Events.PRODUCTS_UPDATED, ProductsUpdatedEvent.class),
+            Map.entry(Events.PRODUCTS_SHORTAGE, ProductsShortageEvent.class),
+            Map.entry(Events.AVAILABILITY_CONFIRMED, AvailabilityConfirmedEvent.class),
+            Map.entry(Events.SHIPMENT_ARRANGED, ShipmentArrangedEvent.class),
+            Map.entry(Events.ARRANGEMENT_FAILED, ArrangementFailedEvent.class),
+            Map.entry(Events.SHIPMENT_CANCELLED, ShipmentCancelledEvent.class),
+            // Commands
+            Map.entry(Commands.PROCESS_PAYMENT, ProcessPaymentCommand.class),
+            Map.entry(Commands.CONFIRM_AVAILABILITY, ConfirmAvailabilityCommand.class),
+            Map.entry(Commands.UPDATE_PRODUCTS, UpdateProductsCommand.class),
+            Map.entry(Commands.ARRANGE_SHIPMENT, ArrangeShipmentCommand.class),
+            Map.entry(Commands.CANCEL_SHIPMENT, CancelShipmentCommand.class),
+            Map.entry(Commands.COMPLETE_ORDER, CompleteOrderCommand.class),
+            Map.entry(Commands.CANCEL_ORDER, CancelOrderCommand.class)
+    );
+
+    // Keyed by class name, which is what the passthrough outbox rows keep
+    private static final Map<String, String> NAMES = new HashMap<>();
+
+    static {
+        CLASSES.forEach((name, type) -> NAMES.put(type.getName(), name));
+    }
+
+    private MessageTypes() {}
+
+    /**
+     * @return null for names without a message class
+     */
+    public static Class<? extends Message> classOf(String name) {
+        return name != null ? CLASSES.get(name) : null;
+    }
+
+    /**
+     * @return null for classes that aren't messages
+     */
+    public static String nameOf(String className) {
+        return className != null ? NAMES.get(className) : null;
+    }
+
+    public static Type typeOf(Class<?> type) {
+        return Command.class.isAssignableFrom(type) ? Type.COMMAND : Type.EVENT;
+    }
+
+}
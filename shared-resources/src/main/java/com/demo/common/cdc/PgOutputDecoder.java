@@ -0,0 +1,112 @@
+package com.demo.common.cdc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the pgoutput messages streamed from a logical replication slot.
+ * Postgres sends a Relation message before the first change of a table (and again whenever its definition changes),
+ * so the decoder keeps track of them to hand out inserts with named columns.
+ * Not thread-safe, one instance per replication stream.
+ */
+public class PgOutputDecoder {
+
+    // Replication timestamps are microseconds since 2000-01-01 00:00 UTC
+    private static final Instant PG_EPOCH = Instant.parse("2000-01-01T00:00:00Z");
+
+    private final Map<Integer, PgOutputMessage.Relation> relations = new HashMap<>();
+
+    public PgOutputMessage decode(ByteBuffer buffer) {
+        char tag = (char) buffer.get();
+        return switch (tag) {
+            case 'B' -> new PgOutputMessage.Begin(buffer.getLong(), timestamp(buffer.getLong()), buffer.getInt());
+            case 'C' -> {
+                buffer.get(); // flags, currently unused
+                yield new PgOutputMessage.Commit(buffer.getLong(), buffer.getLong(), timestamp(buffer.getLong()));
+            }
+            case 'R' -> this.decodeRelation(buffer);
+            case 'I' -> this.decodeInsert(buffer);
+            default -> new PgOutputMessage.Other(tag);
+        };
+    }
+
+    private PgOutputMessage.Relation decodeRelation(ByteBuffer buffer) {
+        int oid = buffer.getInt();
+        String namespace = string(buffer);
+        String name = string(buffer);
+        buffer.get(); // replica identity setting
+        short columnCount = buffer.getShort();
+        List<String> columns = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            buffer.get(); // flags (part of the key or not)
+            columns.add(string(buffer));
+            buffer.getInt(); // type oid
+            buffer.getInt(); // type modifier
+        }
+        PgOutputMessage.Relation relation = new PgOutputMessage.Relation(oid, namespace, name, List.copyOf(columns));
+        this.relations.put(oid, relation);
+        return relation;
+    }
+
+    private PgOutputMessage.Insert decodeInsert(ByteBuffer buffer) {
+        int oid = buffer.getInt();
+        PgOutputMessage.Relation relation = this.relations.get(oid);
+        if (relation == null) {
+            throw new IllegalStateException("Insert into relation " + oid + " received before its Relation message");
+        }
+        buffer.get(); // 'N', a new tuple follows
+        short columnCount = buffer.getShort();
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < columnCount; i++) {
+            char kind = (char) buffer.get();
+            String value = switch (kind) {
+                case 'n', 'u' -> null; // null, or unchanged TOAST value (never the case for inserts)
+                case 't' -> {
+                    byte[] bytes = new byte[buffer.getInt()];
+                    buffer.get(bytes);
+                    yield new String(bytes, StandardCharsets.UTF_8);
+                }
+                default -> throw new IllegalStateException("Unexpected tuple data kind '" + kind + "'");
+            };
+            values.put(relation.columns().get(i), value);
+        }
+        return new PgOutputMessage.Insert(relation, values);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int start = buffer.position();
+        int end = start;
+        while (buffer.get(end) != 0) end++;
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytes);
+        buffer.get(); // terminating zero
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Instant timestamp(long microsSincePgEpoch) {
+        return PG_EPOCH.plus(microsSincePgEpoch, ChronoUnit.MICROS);
+    }
+
+    /**
+     * Decodes a bytea column in the (default) hex text format, e.g. {@code \x01ff}.
+     */
+    public static byte[] bytea(String text) {
+        if (text == null) return null;
+        if (!text.startsWith("\\x")) {
+            throw new IllegalArgumentException("Only the hex bytea output format is supported");
+        }
+        byte[] bytes = new byte[(text.length() - 2) / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(text, 2 + i * 2, 4 + i * 2, 16);
+        }
+        return bytes;
+    }
+
+}
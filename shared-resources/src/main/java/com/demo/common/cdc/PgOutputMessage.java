@@ -0,0 +1,33 @@
+package com.demo.common.cdc;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Messages of the PostgreSQL logical replication output plugin "pgoutput" (protocol version 1) that the outbox relay cares about.
+ */
+public sealed interface PgOutputMessage {
+
+    record Begin(long finalLsn, Instant commitTime, int xid) implements PgOutputMessage {
+    }
+
+    record Commit(long commitLsn, long endLsn, Instant commitTime) implements PgOutputMessage {
+    }
+
+    record Relation(int oid, String namespace, String name, List<String> columns) implements PgOutputMessage {
+    }
+
+    /**
+     * Column values are in the text format, null stays null.
+     */
+    record Insert(Relation relation, Map<String, String> values) implements PgOutputMessage {
+    }
+
+    /**
+     * Anything else (updates, deletes, truncates, origins, types, logical messages).
+     */
+    record Other(char tag) implements PgOutputMessage {
+    }
+
+}
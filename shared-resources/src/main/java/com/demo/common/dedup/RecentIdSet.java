@@ -0,0 +1,126 @@
+package com.demo.common.dedup;
+
+import java.util.UUID;
+
+/**
+ * Bounded set of recently seen UUIDs, stored as pairs of longs in an open-addressing table (no boxing, no entry objects).
+ * Entries are evicted oldest first, once they are older than the time to live or to make room beyond the maximum size.
+ * Not thread-safe.
+ */
+public class RecentIdSet {
+
+    private final int maxSize;
+    private final long ttlMs;
+    // Linear probing table, kept at most half full: slot i holds msb at 2i and lsb at 2i+1, (0, 0) marks an empty slot
+    private final long[] table;
+    private final int mask;
+    private boolean containsNil;
+    // Insertion order, for eviction
+    private final long[] order;
+    private final long[] insertedAt;
+    private int head;
+    private int size;
+
+    public RecentIdSet(int maxSize, long ttlMs) {
+        if (maxSize <= 0) throw new IllegalArgumentException("Max size must be positive");
+        this.maxSize = maxSize;
+        this.ttlMs = ttlMs;
+        int slots = Integer.highestOneBit(Math.max(2, maxSize * 2 - 1)) << 1;
+        this.table = new long[slots * 2];
+        this.mask = slots - 1;
+        this.order = new long[maxSize * 2];
+        this.insertedAt = new long[maxSize];
+    }
+
+    public boolean contains(UUID id, long now) {
+        this.expire(now);
+        return this.find(id.getMostSignificantBits(), id.getLeastSignificantBits()) >= 0;
+    }
+
+    /**
+     * Adds the id, returns false if it was already there.
+     */
+    public boolean add(UUID id, long now) {
+        this.expire(now);
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        if (this.find(msb, lsb) >= 0) return false;
+        if (this.size == this.maxSize) this.evictOldest();
+        // 1. Insert into the table
+        if (msb == 0 && lsb == 0) {
+            this.containsNil = true;
+        } else {
+            int slot = this.slotOf(msb, lsb);
+            while (!this.isEmpty(slot)) slot = (slot + 1) & this.mask;
+            this.table[2 * slot] = msb;
+            this.table[2 * slot + 1] = lsb;
+        }
+        // 2. Append to the insertion order
+        int tail = (this.head + this.size) % this.maxSize;
+        this.order[2 * tail] = msb;
+        this.order[2 * tail + 1] = lsb;
+        this.insertedAt[tail] = now;
+        this.size++;
+        return true;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    private void expire(long now) {
+        while (this.size > 0 && now - this.insertedAt[this.head] >= this.ttlMs) this.evictOldest();
+    }
+
+    private void evictOldest() {
+        this.remove(this.order[2 * this.head], this.order[2 * this.head + 1]);
+        this.head = (this.head + 1) % this.maxSize;
+        this.size--;
+    }
+
+    private int find(long msb, long lsb) {
+        if (msb == 0 && lsb == 0) return this.containsNil ? Integer.MAX_VALUE : -1;
+        int slot = this.slotOf(msb, lsb);
+        while (!this.isEmpty(slot)) {
+            if (this.table[2 * slot] == msb && this.table[2 * slot + 1] == lsb) return slot;
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    private void remove(long msb, long lsb) {
+        if (msb == 0 && lsb == 0) {
+            this.containsNil = false;
+            return;
+        }
+        int hole = this.find(msb, lsb);
+        if (hole < 0) return;
+        // Shift the following entries of the probe run back, so lookups never stop at the hole too early
+        int slot = hole;
+        while (true) {
+            slot = (slot + 1) & this.mask;
+            if (this.isEmpty(slot)) break;
+            int home = this.slotOf(this.table[2 * slot], this.table[2 * slot + 1]);
+            // Entries whose home lies cyclically in (hole, slot] are still reachable, the others move into the hole
+            boolean reachable = hole <= slot ? hole < home && home <= slot : hole < home || home <= slot;
+            if (!reachable) {
+                this.table[2 * hole] = this.table[2 * slot];
+                this.table[2 * hole + 1] = this.table[2 * slot + 1];
+                hole = slot;
+            }
+        }
+        this.table[2 * hole] = 0;
+        this.table[2 * hole + 1] = 0;
+    }
+
+    private boolean isEmpty(int slot) {
+        return this.table[2 * slot] == 0 && this.table[2 * slot + 1] == 0;
+    }
+
+    private int slotOf(long msb, long lsb) {
+        // Random UUIDs are already well spread, the mixing only guards against sequential ones
+        long hash = (msb ^ Long.rotateLeft(lsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & this.mask;
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.demo.common.journal;
+
+/**
+ * When appended records are forced from the page cache to disk.
+ */
+public enum FsyncPolicy {
+
+    // Every append is forced before it returns
+    ALWAYS,
+
+    // Appends are forced at most once per interval (and on flush()), a crash loses at most the last interval
+    INTERVAL,
+
+    // Left to the operating system, a process crash loses nothing but a machine crash may
+    NEVER
+
+}
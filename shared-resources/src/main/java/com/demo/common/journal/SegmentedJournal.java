@@ -0,0 +1,338 @@
+package com.demo.common.journal;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of byte records, stored in memory-mapped segment files of a fixed size.
+ * <p>
+ * Records are addressed by their position, a global byte offset that keeps growing across segments
+ * (a segment file is named after the position it starts at). Each record is laid out as
+ * {@code [length][crc][payload]} and padded to 4 bytes; the crc covers the position and the payload,
+ * so a torn write or a leftover from the file's previous use never passes for a record.
+ * A segment that has no room left for the next record ends with a length of -1.
+ * <p>
+ * One reader tails the journal and acknowledges what it has processed. The acknowledged position is
+ * persisted in a checkpoint file, and segments that lie entirely before it are recycled, along with their
+ * mappings, as the next segments to write instead of allocating new files.
+ * <p>
+ * Appends are serialized; reads don't lock and only see fully written records. A directory can only be
+ * opened by one journal at a time, which holds a lock on its checkpoint file until it is closed.
+ */
+public class SegmentedJournal implements AutoCloseable {
+
+    private static final int HEADER_SIZE = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    // Readers acquire the length a writer released, which makes the rest of the record visible to them
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMs;
+    private final NavigableMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+    private final Deque<Spare> spareSegments = new ArrayDeque<>();
+    private final FileChannel checkpoint;
+
+    private long writePosition;
+    private long forcedPosition;
+    private long lastForceAt;
+    private volatile long acknowledgedPosition;
+
+    public SegmentedJournal(Path directory, int segmentSize, FsyncPolicy fsyncPolicy, long fsyncIntervalMs) throws IOException {
+        if (segmentSize <= HEADER_SIZE || segmentSize % 4 != 0) {
+            throw new IllegalArgumentException("Segment size must be a multiple of 4 larger than " + HEADER_SIZE);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.checkpoint = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.lock();
+        this.recover();
+    }
+
+    /**
+     * Appends a record and returns its position.
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        int recordSize = recordSize(payload.length);
+        if (payload.length == 0 || recordSize > this.segmentSize) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes doesn't fit in a segment");
+        }
+        // 1. Move on to the next segment when this one is full
+        int offset = this.offsetOf(this.writePosition);
+        if (offset + recordSize > this.segmentSize) {
+            this.roll(offset);
+            offset = 0;
+        }
+        long position = this.writePosition;
+        MappedByteBuffer segment = this.segmentAt(position);
+        // 2. Write the record, leaving the length for last
+        segment.putInt(offset + 4, crc(position, payload));
+        segment.put(offset + HEADER_SIZE, payload);
+        // Whatever a previous use of the file left at the next header must not be taken for a record
+        int next = offset + recordSize;
+        if (next < this.segmentSize) segment.putInt(next, 0);
+        // 3. Publish it to readers
+        INT.setRelease(segment, offset, payload.length);
+        this.writePosition = position + recordSize;
+        this.forceIfDue(false);
+        return position;
+    }
+
+    /**
+     * Reads the record at the given position, or returns null if it hasn't been written (yet).
+     */
+    public Entry read(long position) {
+        long base = this.baseOf(position);
+        int offset = this.offsetOf(position);
+        MappedByteBuffer segment = this.segments.get(base);
+        if (segment == null) return null;
+        int length = offset + HEADER_SIZE <= this.segmentSize ? (int) INT.getAcquire(segment, offset) : END_OF_SEGMENT;
+        if (length == END_OF_SEGMENT) {
+            // The next segment is mapped before the end marker is written
+            return this.read(base + this.segmentSize);
+        }
+        // Anything but a whole record written at this position is taken for one that hasn't been written yet
+        if (!this.isRecord(segment, position, offset, length)) return null;
+        byte[] payload = new byte[length];
+        segment.get(offset + HEADER_SIZE, payload);
+        return new Entry(position, position + recordSize(length), payload);
+    }
+
+    /**
+     * Marks everything before the given position as processed, so reading resumes there after a restart.
+     */
+    public synchronized void acknowledge(long position) throws IOException {
+        if (position <= this.acknowledgedPosition) return;
+        // 1. Persist the new read position
+        ByteBuffer buffer = ByteBuffer.allocate(12).putLong(position).putInt(crc(position, new byte[0])).flip();
+        this.checkpoint.write(buffer, 0);
+        if (this.fsyncPolicy != FsyncPolicy.NEVER) this.checkpoint.force(false);
+        this.acknowledgedPosition = position;
+        // 2. Segments that are entirely acknowledged become spares for the writer
+        long firstNeeded = this.baseOf(Math.min(position, this.writePosition));
+        while (!this.segments.isEmpty() && this.segments.firstKey() < firstNeeded) {
+            Map.Entry<Long, MappedByteBuffer> segment = this.segments.pollFirstEntry();
+            this.spareSegments.push(new Spare(this.segmentPath(segment.getKey()), segment.getValue()));
+        }
+    }
+
+    /**
+     * Forces the appended records to disk, if the policy calls for it.
+     */
+    public synchronized void flush() throws IOException {
+        this.forceIfDue(true);
+    }
+
+    public long acknowledgedPosition() {
+        return this.acknowledgedPosition;
+    }
+
+    public synchronized long writePosition() {
+        return this.writePosition;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.fsyncPolicy != FsyncPolicy.NEVER) this.force();
+        this.checkpoint.close();
+        this.segments.clear();
+    }
+
+    private void roll(int offset) throws IOException {
+        long base = this.baseOf(this.writePosition);
+        long nextBase = base + this.segmentSize;
+        this.segments.put(nextBase, this.map(nextBase));
+        MappedByteBuffer segment = this.segments.get(base);
+        if (offset < this.segmentSize) INT.setRelease(segment, offset, END_OF_SEGMENT);
+        // The previous segment is complete, there is nothing left to force in it afterwards
+        if (this.fsyncPolicy != FsyncPolicy.NEVER) segment.force();
+        this.writePosition = nextBase;
+        this.forcedPosition = nextBase;
+    }
+
+    private MappedByteBuffer segmentAt(long position) throws IOException {
+        long base = this.baseOf(position);
+        MappedByteBuffer segment = this.segments.get(base);
+        if (segment == null) {
+            // The previous segment was filled up exactly
+            segment = this.map(base);
+            this.segments.put(base, segment);
+        }
+        return segment;
+    }
+
+    private MappedByteBuffer map(long base) throws IOException {
+        Path path = this.segmentPath(base);
+        if (Files.exists(path) || this.spareSegments.isEmpty()) return this.map(path);
+        // 1. Reuse an acknowledged segment file: no allocation, and its pages may still be cached
+        Spare spare = this.spareSegments.poll();
+        Files.move(spare.path(), path, StandardCopyOption.ATOMIC_MOVE);
+        // 2. And its mapping, which follows the file: a mapping is only released once its buffer is garbage collected,
+        // so mapping the file again would pile them up
+        MappedByteBuffer segment = spare.mapping() != null ? spare.mapping() : this.map(path);
+        // 3. The first header is from the file's previous use: cleared before the segment is published to readers
+        segment.putInt(0, 0);
+        return segment;
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+        }
+    }
+
+    private void forceIfDue(boolean flushing) {
+        switch (this.fsyncPolicy) {
+            case ALWAYS -> this.force();
+            case INTERVAL -> {
+                long now = System.currentTimeMillis();
+                if (flushing || now - this.lastForceAt >= this.fsyncIntervalMs) {
+                    this.force();
+                    this.lastForceAt = now;
+                }
+            }
+            case NEVER -> {
+            }
+        }
+    }
+
+    private void force() {
+        if (this.forcedPosition == this.writePosition) return;
+        long base = this.baseOf(this.writePosition);
+        MappedByteBuffer segment = this.segments.get(base);
+        if (segment == null) return;
+        int from = this.offsetOf(Math.max(this.forcedPosition, base));
+        segment.force(from, this.offsetOf(this.writePosition) - from);
+        this.forcedPosition = this.writePosition;
+    }
+
+    // Two writers would append over each other's records, so the journal belongs to whoever locked its checkpoint first.
+    // The lock goes with the channel when the journal is closed (or the process exits).
+    private void lock() throws IOException {
+        FileLock lock;
+        try {
+            lock = this.checkpoint.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // Held by another journal of this JVM
+        }
+        if (lock == null) {
+            this.checkpoint.close();
+            throw new IllegalStateException("Journal " + this.directory + " is already open in another journal or process");
+        }
+    }
+
+    private void recover() throws IOException {
+        // 1. Read the acknowledged position
+        ByteBuffer buffer = ByteBuffer.allocate(12);
+        this.checkpoint.read(buffer, 0);
+        buffer.flip();
+        long acknowledged = 0;
+        if (buffer.remaining() == 12) {
+            long position = buffer.getLong();
+            if (buffer.getInt() == crc(position, new byte[0])) acknowledged = position;
+        }
+        // 2. Map the segments still needed, the older ones are spares
+        List<Long> bases;
+        try (Stream<Path> files = Files.list(this.directory)) {
+            bases = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        long firstNeeded = this.baseOf(acknowledged);
+        for (long base : bases) {
+            if (base < firstNeeded) {
+                // Mapped when reused
+                this.spareSegments.push(new Spare(this.segmentPath(base), null));
+            } else {
+                this.segments.put(base, this.map(base));
+            }
+        }
+        if (this.segments.isEmpty()) {
+            this.segments.put(firstNeeded, this.map(firstNeeded));
+        }
+        // A lost checkpoint means reading again from the oldest segment
+        this.acknowledgedPosition = Math.max(acknowledged, this.segments.firstKey());
+        // 3. Find where the last segment's valid records end
+        long base = this.segments.lastKey();
+        MappedByteBuffer segment = this.segments.get(base);
+        int offset = 0;
+        while (offset + HEADER_SIZE <= this.segmentSize) {
+            int length = segment.getInt(offset);
+            if (!this.isRecord(segment, base + offset, offset, length)) break;
+            offset += recordSize(length);
+        }
+        // Cut off whatever follows, so readers stop there
+        if (offset + HEADER_SIZE <= this.segmentSize) segment.putInt(offset, 0);
+        this.writePosition = base + offset;
+        this.forcedPosition = this.writePosition;
+    }
+
+    /**
+     * Whether the header at the offset is that of a record written at the position: a length that fits in the segment,
+     * and a crc that matches (checked in place, before anything is allocated for the payload).
+     */
+    private boolean isRecord(MappedByteBuffer segment, long position, int offset, int length) {
+        if (length <= 0 || length > this.segmentSize - offset - HEADER_SIZE) return false;
+        return segment.getInt(offset + 4) == crc(position, segment.slice(offset + HEADER_SIZE, length));
+    }
+
+    private long baseOf(long position) {
+        return position - position % this.segmentSize;
+    }
+
+    private int offsetOf(long position) {
+        return (int) (position % this.segmentSize);
+    }
+
+    private Path segmentPath(long base) {
+        return this.directory.resolve(String.format("%019d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private static int recordSize(int length) {
+        return HEADER_SIZE + ((length + 3) & ~3);
+    }
+
+    private static int crc(long position, byte[] payload) {
+        return crc(position, ByteBuffer.wrap(payload));
+    }
+
+    private static int crc(long position, ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(8).putLong(0, position));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    public record Entry(long position, long nextPosition, byte[] payload) {}
+
+    // An acknowledged segment file, and its mapping if it has one
+    private record Spare(Path path, MappedByteBuffer mapping) {}
+
+}
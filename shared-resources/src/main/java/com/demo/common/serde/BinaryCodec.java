@@ -0,0 +1,377 @@
+package com.demo.common.serde;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Schema-based binary encoding of the message classes (anything with a no-args constructor, really).
+ * A message is the MAGIC byte followed by an object: the varint schema ID of its class, then its fields in schema order,
+ * with no names and no type information beyond the IDs of nested objects. UUIDs take 16 bytes, numbers are varints.
+ * Readers look the writer's schema up by ID and match its fields to their own class by name, so fields can be added
+ * and removed between versions (unknown ones are skipped, missing ones are left null).
+ * Thread-safe.
+ */
+public class BinaryCodec {
+
+    // Never the first byte of a JSON document, so the two formats can share a topic
+    public static final byte MAGIC = (byte) 0xB1;
+
+    private final SchemaRegistry registry;
+    private final Map<Class<?>, WritePlan> writePlans = new ConcurrentHashMap<>();
+    private final Map<Integer, ReadPlan> readPlans = new ConcurrentHashMap<>();
+
+    public BinaryCodec(SchemaRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    public byte[] encode(Object value) {
+        Output out = new Output();
+        out.bytes[out.length++] = MAGIC;
+        this.writeObject(out, value);
+        return Arrays.copyOf(out.bytes, out.length);
+    }
+
+    public Object decode(byte[] data) {
+        if (!isBinary(data)) {
+            throw new IllegalArgumentException("Not in the binary format");
+        }
+        Input in = new Input(data);
+        in.position = 1;
+        return this.readObject(in, Object.class);
+    }
+
+    /**
+     * The class the message's schema ID stands for in this registry, without decoding the message.
+     */
+    public String className(byte[] data) {
+        if (!isBinary(data)) {
+            throw new IllegalArgumentException("Not in the binary format");
+        }
+        Input in = new Input(data);
+        in.position = 1;
+        long id = in.readVarLong();
+        return id == 0 ? null : this.registry.lookup((int) (id - 1)).className();
+    }
+
+    // Writing
+
+    private void writeObject(Output out, Object value) {
+        if (value == null) {
+            out.writeVarLong(0);
+            return;
+        }
+        WritePlan plan = this.writePlans.computeIfAbsent(value.getClass(), this::writePlan);
+        out.writeVarLong(plan.schema.id() + 1L);
+        for (int i = 0; i < plan.fields.length; i++) {
+            try {
+                this.write(out, plan.types[i], plan.fields[i].get(value));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private void write(Output out, String type, Object value) {
+        switch (type) {
+            case "uuid" -> {
+                if (out.present(value)) {
+                    UUID uuid = (UUID) value;
+                    out.writeLong(uuid.getMostSignificantBits());
+                    out.writeLong(uuid.getLeastSignificantBits());
+                }
+            }
+            case "string" -> {
+                if (value == null) {
+                    out.writeVarLong(0);
+                } else {
+                    byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                    out.writeVarLong(bytes.length + 1L);
+                    out.write(bytes);
+                }
+            }
+            case "instant" -> {
+                if (out.present(value)) {
+                    Instant instant = (Instant) value;
+                    out.writeVarLong(zigZag(instant.getEpochSecond()));
+                    out.writeVarLong(instant.getNano());
+                }
+            }
+            case "int" -> {
+                if (out.present(value)) out.writeVarLong(zigZag((Integer) value));
+            }
+            case "long" -> {
+                if (out.present(value)) out.writeVarLong(zigZag((Long) value));
+            }
+            case "bool" -> out.writeVarLong(value == null ? 0 : (Boolean) value ? 2 : 1);
+            case "double" -> {
+                if (out.present(value)) out.writeLong(Double.doubleToLongBits((Double) value));
+            }
+            case "decimal" -> {
+                if (out.present(value)) {
+                    BigDecimal decimal = (BigDecimal) value;
+                    out.writeVarLong(zigZag(decimal.scale()));
+                    byte[] unscaled = decimal.unscaledValue().toByteArray();
+                    out.writeVarLong(unscaled.length);
+                    out.write(unscaled);
+                }
+            }
+            case "object" -> this.writeObject(out, value);
+            default -> {
+                if (type.startsWith("enum(")) {
+                    out.writeVarLong(value == null ? 0 : ((Enum<?>) value).ordinal() + 1L);
+                } else if (type.startsWith("list<")) {
+                    if (value == null) {
+                        out.writeVarLong(0);
+                    } else {
+                        List<?> list = (List<?>) value;
+                        out.writeVarLong(list.size() + 1L);
+                        String elementType = Schema.elementType(type);
+                        for (Object element : list) this.write(out, elementType, element);
+                    }
+                } else {
+                    throw new IllegalStateException("Unknown wire type " + type);
+                }
+            }
+        }
+    }
+
+    private WritePlan writePlan(Class<?> type) {
+        Schema schema = this.registry.register(type);
+        List<Field> fields = serializedFields(type);
+        return new WritePlan(schema, fields.toArray(Field[]::new),
+                schema.fields().stream().map(Schema.Field::type).toArray(String[]::new));
+    }
+
+    // Reading
+
+    private Object readObject(Input in, Type target) {
+        long id = in.readVarLong();
+        if (id == 0) return null;
+        ReadPlan plan = this.readPlans.computeIfAbsent((int) (id - 1), this::readPlan);
+        Object instance;
+        try {
+            instance = plan.constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot instantiate " + plan.constructor.getDeclaringClass().getName(), e);
+        }
+        for (int i = 0; i < plan.types.length; i++) {
+            Field field = plan.fields[i];
+            Object value = this.read(in, plan.types[i], field != null ? field.getGenericType() : null);
+            if (field == null || value == null) continue;
+            if (field.getType().isPrimitive() || field.getType().isInstance(value)) {
+                try {
+                    field.set(instance, value);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Reads a value written as the given wire type; target is the reader's type for it, null when it gets dropped.
+     */
+    private Object read(Input in, String type, Type target) {
+        return switch (type) {
+            case "uuid" -> in.present() ? new UUID(in.readLong(), in.readLong()) : null;
+            case "string" -> {
+                long length = in.readVarLong();
+                yield length == 0 ? null : in.readString((int) (length - 1));
+            }
+            case "instant" -> in.present() ? Instant.ofEpochSecond(unZigZag(in.readVarLong()), in.readVarLong()) : null;
+            case "int" -> in.present() ? (int) unZigZag(in.readVarLong()) : null;
+            case "long" -> in.present() ? unZigZag(in.readVarLong()) : null;
+            case "bool" -> {
+                long value = in.readVarLong();
+                yield value == 0 ? null : value == 2;
+            }
+            case "double" -> in.present() ? Double.longBitsToDouble(in.readLong()) : null;
+            case "decimal" -> {
+                if (!in.present()) yield null;
+                int scale = (int) unZigZag(in.readVarLong());
+                yield new BigDecimal(new BigInteger(in.readBytes((int) in.readVarLong())), scale);
+            }
+            case "object" -> this.readObject(in, target);
+            default -> {
+                if (type.startsWith("enum(")) {
+                    long ordinal = in.readVarLong();
+                    if (ordinal == 0 || !(target instanceof Class<?> enumType) || !enumType.isEnum()) yield null;
+                    yield enumConstant(enumType, Schema.enumConstants(type).get((int) (ordinal - 1)));
+                }
+                if (type.startsWith("list<")) {
+                    long size = in.readVarLong();
+                    if (size == 0) yield null;
+                    String elementType = Schema.elementType(type);
+                    Type elementTarget = target instanceof ParameterizedType parameterized ? parameterized.getActualTypeArguments()[0] : null;
+                    List<Object> list = new ArrayList<>((int) (size - 1));
+                    for (long i = 1; i < size; i++) list.add(this.read(in, elementType, elementTarget));
+                    yield list;
+                }
+                throw new IllegalStateException("Unknown wire type " + type);
+            }
+        };
+    }
+
+    private ReadPlan readPlan(int id) {
+        Schema schema = this.registry.lookup(id);
+        Class<?> type;
+        Constructor<?> constructor;
+        try {
+            type = Class.forName(schema.className());
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot read schema " + id + " into " + schema.className(), e);
+        }
+        Map<String, Field> byName = new HashMap<>();
+        for (Field field : serializedFields(type)) byName.put(field.getName(), field);
+        // The writer's fields, in its order, each with the reader's field of the same name and a compatible type (or null)
+        Field[] fields = new Field[schema.fields().size()];
+        String[] types = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            Schema.Field written = schema.fields().get(i);
+            Field field = byName.get(written.name());
+            types[i] = written.type();
+            fields[i] = field != null && Schema.compatible(written.type(), Schema.wireType(field.getGenericType())) ? field : null;
+        }
+        return new ReadPlan(constructor, fields, types);
+    }
+
+    private static List<Field> serializedFields(Class<?> type) {
+        Deque<Class<?>> hierarchy = new ArrayDeque<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) hierarchy.push(c);
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c : hierarchy) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Schema.isSerialized(field)) continue;
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object enumConstant(Class<?> enumType, String name) {
+        try {
+            return Enum.valueOf((Class<? extends Enum>) enumType, name);
+        } catch (IllegalArgumentException e) {
+            return null; // A constant the reader doesn't know (yet)
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private record WritePlan(Schema schema, Field[] fields, String[] types) {}
+
+    private record ReadPlan(Constructor<?> constructor, Field[] fields, String[] types) {}
+
+    private static final class Output {
+
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        private void ensure(int extra) {
+            if (this.length + extra > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.length + extra));
+            }
+        }
+
+        // Presence byte of the fixed-size types
+        private boolean present(Object value) {
+            this.ensure(1);
+            this.bytes[this.length++] = (byte) (value != null ? 1 : 0);
+            return value != null;
+        }
+
+        private void writeVarLong(long value) {
+            this.ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                this.bytes[this.length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.bytes[this.length++] = (byte) value;
+        }
+
+        private void writeLong(long value) {
+            this.ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) this.bytes[this.length++] = (byte) (value >>> shift);
+        }
+
+        private void write(byte[] value) {
+            this.ensure(value.length);
+            System.arraycopy(value, 0, this.bytes, this.length, value.length);
+            this.length += value.length;
+        }
+
+    }
+
+    private static final class Input {
+
+        private final byte[] bytes;
+        private int position;
+
+        private Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private boolean present() {
+            return this.bytes[this.position++] != 0;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = this.bytes[this.position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) value = (value << 8) | (this.bytes[this.position++] & 0xFF);
+            return value;
+        }
+
+        private byte[] readBytes(int length) {
+            byte[] value = Arrays.copyOfRange(this.bytes, this.position, this.position + length);
+            this.position += length;
+            return value;
+        }
+
+        private String readString(int length) {
+            String value = new String(this.bytes, this.position, length, StandardCharsets.UTF_8);
+            this.position += length;
+            return value;
+        }
+
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.demo.common.serde;
+
+import com.demo.common.Message;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.util.Map;
+
+/**
+ * Writes messages in the binary format of {@link BinaryCodec}.
+ * Switch a producer to it only once all the consumers of its topics read with {@link MixedMessageDeserializer}.
+ */
+public class BinaryMessageSerializer implements Serializer<Message> {
+
+    private BinaryCodec codec;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        this.codec = SerdeConfig.codec(configs);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Message message) {
+        if (message == null) return null;
+        return this.codec.encode(message);
+    }
+
+}
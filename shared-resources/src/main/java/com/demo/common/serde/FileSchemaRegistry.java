@@ -0,0 +1,108 @@
+package com.demo.common.serde;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local stand-in for a schema registry: the schemas are appended to a text file that all the services on the machine share.
+ * New IDs are assigned under an exclusive file lock, after reading what the other processes registered in the meantime.
+ * Use {@link #at(Path)}, so all the serializers of a JVM share one instance (and its cache) per file.
+ */
+public class FileSchemaRegistry implements SchemaRegistry {
+
+    private static final Map<Path, FileSchemaRegistry> INSTANCES = new ConcurrentHashMap<>();
+
+    private final Path file;
+    private final Map<Integer, Schema> byId = new HashMap<>();
+    // The schema of each class as it is in this JVM
+    private final Map<Class<?>, Schema> byClass = new ConcurrentHashMap<>();
+
+    private FileSchemaRegistry(Path file) {
+        this.file = file;
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static FileSchemaRegistry at(Path file) {
+        return INSTANCES.computeIfAbsent(file.toAbsolutePath().normalize(), FileSchemaRegistry::new);
+    }
+
+    @Override
+    public Schema register(Class<?> type) {
+        Schema schema = this.byClass.get(type);
+        if (schema != null) return schema;
+        synchronized (this) {
+            List<Schema.Field> fields = Schema.describe(type);
+            schema = this.locked(channel -> {
+                // 1. Reuse the ID of an identical schema, whoever registered it
+                this.load();
+                for (Schema registered : this.byId.values()) {
+                    if (registered.className().equals(type.getName()) && registered.fields().equals(fields)) return registered;
+                }
+                // 2. Otherwise append it with the next ID
+                int id = this.byId.keySet().stream().mapToInt(Integer::intValue).max().orElse(0) + 1;
+                Schema registered = new Schema(id, type.getName(), fields);
+                channel.position(channel.size());
+                channel.write(ByteBuffer.wrap((registered.format() + "\n").getBytes(StandardCharsets.UTF_8)));
+                channel.force(false);
+                this.byId.put(id, registered);
+                return registered;
+            });
+            this.byClass.put(type, schema);
+            return schema;
+        }
+    }
+
+    @Override
+    public synchronized Schema lookup(int id) {
+        Schema schema = this.byId.get(id);
+        if (schema == null) {
+            // Registered by another process since the file was last read
+            this.locked(channel -> {
+                this.load();
+                return null;
+            });
+            schema = this.byId.get(id);
+        }
+        if (schema == null) {
+            throw new IllegalStateException("Unknown schema ID " + id + " (not in " + this.file + ")");
+        }
+        return schema;
+    }
+
+    private void load() throws IOException {
+        for (String line : Files.readAllLines(this.file, StandardCharsets.UTF_8)) {
+            if (line.isBlank()) continue;
+            Schema schema = Schema.parse(line);
+            this.byId.putIfAbsent(schema.id(), schema);
+        }
+    }
+
+    private <T> T locked(LockedAction<T> action) {
+        try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            return action.run(channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface LockedAction<T> {
+        T run(FileChannel channel) throws IOException;
+    }
+
+}
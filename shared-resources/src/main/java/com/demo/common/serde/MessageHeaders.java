@@ -0,0 +1,83 @@
+package com.demo.common.serde;
+
+import com.demo.common.Message;
+import com.demo.common.MessageTypes;
+import com.demo.common.Type;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * The Kafka headers the producers stamp on every message, so consumers can tell what a record holds
+ * (and route or store it) without deserializing its value.
+ */
+public final class MessageHeaders {
+
+    public static final String MESSAGE_ID = "message-id";
+    public static final String MESSAGE_TYPE = "message-type";
+    public static final String MESSAGE_NAME = "message-name";
+    public static final String CORRELATION_ID = "correlation-id";
+    public static final String SCHEMA_VERSION = "schema-version";
+
+    // Version of the Message classes; bump it on changes the consumers have to know about
+    public static final String CURRENT_SCHEMA_VERSION = "1";
+
+    private MessageHeaders() {}
+
+    public record Metadata(UUID id, Type type, String name, UUID correlationId, String schemaVersion) {
+
+        /**
+         * @return null for names without a message class
+         */
+        public Class<? extends Message> messageClass() {
+            return MessageTypes.classOf(this.name);
+        }
+
+    }
+
+    public static void stamp(Headers headers, Message message) {
+        set(headers, MESSAGE_ID, message.getId());
+        set(headers, MESSAGE_TYPE, message.getType());
+        set(headers, MESSAGE_NAME, message.getName());
+        set(headers, CORRELATION_ID, message.getCorrelationId());
+        set(headers, SCHEMA_VERSION, CURRENT_SCHEMA_VERSION);
+    }
+
+    /**
+     * For already serialized messages, where only the class name is known (and the ID, if at hand).
+     */
+    public static void stamp(Headers headers, UUID id, String className, String correlationId) {
+        String name = MessageTypes.nameOf(className);
+        set(headers, MESSAGE_ID, id);
+        set(headers, MESSAGE_TYPE, name != null ? MessageTypes.typeOf(MessageTypes.classOf(name)) : null);
+        set(headers, MESSAGE_NAME, name);
+        set(headers, CORRELATION_ID, correlationId);
+        set(headers, SCHEMA_VERSION, CURRENT_SCHEMA_VERSION);
+    }
+
+    /**
+     * @return null when the record lacks the name or the correlation ID (e.g. it was published before the headers were)
+     */
+    public static Metadata read(Headers headers) {
+        String name = get(headers, MESSAGE_NAME);
+        String correlationId = get(headers, CORRELATION_ID);
+        if (name == null || correlationId == null) return null;
+        String id = get(headers, MESSAGE_ID);
+        String type = get(headers, MESSAGE_TYPE);
+        return new Metadata(id != null ? UUID.fromString(id) : null, type != null ? Type.valueOf(type) : null,
+                name, UUID.fromString(correlationId), get(headers, SCHEMA_VERSION));
+    }
+
+    private static void set(Headers headers, String key, Object value) {
+        headers.remove(key); // Sending the record again (e.g. to the DLT) must not stack up values
+        if (value != null) headers.add(key, value.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String get(Headers headers, String key) {
+        Header header = headers.lastHeader(key);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.demo.common.serde;
+
+import com.demo.common.Message;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.util.Map;
+
+/**
+ * Reads both the binary format of {@link BinaryCodec} and JSON, told apart by the first byte,
+ * so producers can be switched to {@link BinaryMessageSerializer} one at a time.
+ * JSON records go to the deserializer in serde.json.delegate.class (Spring's JsonDeserializer by default),
+ * configured with the same properties.
+ * A binary record whose schema ID stands for another class than the one its headers name is rejected:
+ * its producer doesn't share this consumer's schema registry file.
+ */
+public class MixedMessageDeserializer implements Deserializer<Message> {
+
+    private BinaryCodec codec;
+    private Deserializer<?> json;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        this.codec = SerdeConfig.codec(configs);
+        Object delegate = configs.get(SerdeConfig.JSON_DELEGATE_CLASS);
+        String className = delegate != null ? delegate.toString() : SerdeConfig.DEFAULT_JSON_DELEGATE_CLASS;
+        try {
+            this.json = (Deserializer<?>) Class.forName(className).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create the JSON deserializer " + className, e);
+        }
+        this.json.configure(configs, isKey);
+    }
+
+    @Override
+    public Message deserialize(String topic, byte[] data) {
+        return this.deserialize(topic, null, data);
+    }
+
+    @Override
+    public Message deserialize(String topic, Headers headers, byte[] data) {
+        Object message;
+        try {
+            if (BinaryCodec.isBinary(data)) {
+                this.checkSchema(topic, headers, data);
+                message = this.codec.decode(data);
+            } else {
+                message = this.json.deserialize(topic, headers, data);
+            }
+        } catch (IllegalStateException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new SerializationException("Cannot deserialize the record from " + topic, e);
+        }
+        if (message != null && !(message instanceof Message)) {
+            throw new SerializationException("Not a message: " + message.getClass().getName());
+        }
+        return (Message) message;
+    }
+
+    // The fields are matched by name, so decoding with another class's schema would leave them null instead of failing
+    private void checkSchema(String topic, Headers headers, byte[] data) {
+        MessageHeaders.Metadata metadata = headers != null ? MessageHeaders.read(headers) : null;
+        Class<? extends Message> written = metadata != null ? metadata.messageClass() : null;
+        if (written == null) return; // Nothing to check against
+        String schemaClass = this.codec.className(data);
+        if (!written.getName().equals(schemaClass)) {
+            throw new SerializationException("The " + metadata.name() + " record from " + topic + " has the schema ID of " + schemaClass
+                    + " here: its producer doesn't share the schema registry file (" + SerdeConfig.SCHEMA_REGISTRY_PATH + ")");
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.json != null) this.json.close();
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.demo.common.serde;
+
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * The registered layout of a class in the binary format: its fields, in the order they are written, with their wire types.
+ * Wire types are uuid, string, instant, int, long, bool, double, decimal, enum(CONSTANT,...), list&lt;type&gt;
+ * and object (any other class, written along with the schema ID of its actual class, so polymorphic fields work too).
+ * Stored one per line as {@code id|class|name:type;name:type}.
+ */
+public record Schema(int id, String className, List<Field> fields) {
+
+    public record Field(String name, String type) {}
+
+    /**
+     * Describes the non-static, non-transient fields of a class, superclass fields first.
+     */
+    public static List<Field> describe(Class<?> type) {
+        Deque<Class<?>> hierarchy = new ArrayDeque<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) hierarchy.push(c);
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c : hierarchy) {
+            for (java.lang.reflect.Field field : c.getDeclaredFields()) {
+                if (!isSerialized(field)) continue;
+                fields.add(new Field(field.getName(), wireType(field.getGenericType())));
+            }
+        }
+        return List.copyOf(fields);
+    }
+
+    static boolean isSerialized(java.lang.reflect.Field field) {
+        int modifiers = field.getModifiers();
+        return !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic();
+    }
+
+    static String wireType(Type type) {
+        if (type instanceof ParameterizedType parameterized && parameterized.getRawType() instanceof Class<?> raw && List.class.isAssignableFrom(raw)) {
+            return "list<" + wireType(parameterized.getActualTypeArguments()[0]) + ">";
+        }
+        if (!(type instanceof Class<?> c)) return "object";
+        if (c == UUID.class) return "uuid";
+        if (c == String.class) return "string";
+        if (c == Instant.class) return "instant";
+        if (c == Integer.class || c == int.class) return "int";
+        if (c == Long.class || c == long.class) return "long";
+        if (c == Boolean.class || c == boolean.class) return "bool";
+        if (c == Double.class || c == double.class) return "double";
+        if (c == BigDecimal.class) return "decimal";
+        if (c.isEnum()) {
+            return Arrays.stream(c.getEnumConstants()).map(constant -> ((Enum<?>) constant).name())
+                    .collect(Collectors.joining(",", "enum(", ")"));
+        }
+        return "object";
+    }
+
+    /**
+     * Whether a value written as one wire type can be read into a field of the other
+     * (enum constants are matched by name, so their lists may differ).
+     */
+    static boolean compatible(String written, String read) {
+        if (written.equals(read)) return true;
+        if (written.startsWith("enum(") && read.startsWith("enum(")) return true;
+        if (written.startsWith("list<") && read.startsWith("list<")) {
+            return compatible(elementType(written), elementType(read));
+        }
+        return false;
+    }
+
+    static String elementType(String listType) {
+        return listType.substring("list<".length(), listType.length() - 1);
+    }
+
+    static List<String> enumConstants(String enumType) {
+        return List.of(enumType.substring("enum(".length(), enumType.length() - 1).split(","));
+    }
+
+    String format() {
+        return this.id + "|" + this.className + "|" + this.fields.stream()
+                .map(field -> field.name() + ":" + field.type())
+                .collect(Collectors.joining(";"));
+    }
+
+    static Schema parse(String line) {
+        String[] parts = line.split("\\|", 3);
+        List<Field> fields = new ArrayList<>();
+        if (parts.length > 2 && !parts[2].isEmpty()) {
+            for (String field : parts[2].split(";")) {
+                int colon = field.indexOf(':');
+                fields.add(new Field(field.substring(0, colon), field.substring(colon + 1)));
+            }
+        }
+        return new Schema(Integer.parseInt(parts[0]), parts[1], List.copyOf(fields));
+    }
+
+}
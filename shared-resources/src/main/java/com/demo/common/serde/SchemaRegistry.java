@@ -0,0 +1,15 @@
+package com.demo.common.serde;
+
+/**
+ * Hands out the numeric type IDs of the binary format. Every producer and consumer must share the same registry.
+ */
+public interface SchemaRegistry {
+
+    /**
+     * The ID of the class as it is in this JVM; a class whose fields changed gets a new ID, the old one stays readable.
+     */
+    Schema register(Class<?> type);
+
+    Schema lookup(int id);
+
+}
@@ -0,0 +1,33 @@
+package com.demo.common.serde;
+
+import org.apache.kafka.common.config.ConfigException;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Configuration keys shared by the Kafka serializers of this package (set them under spring.kafka.properties).
+ */
+public final class SerdeConfig {
+
+    // The file of the FileSchemaRegistry, must be the same for every producer and consumer (required, there is no default)
+    public static final String SCHEMA_REGISTRY_PATH = "serde.schema-registry.path";
+
+    // The deserializer MixedMessageDeserializer hands the JSON records to
+    public static final String JSON_DELEGATE_CLASS = "serde.json.delegate.class";
+
+    static final String DEFAULT_JSON_DELEGATE_CLASS = "org.springframework.kafka.support.serializer.JsonDeserializer";
+
+    private SerdeConfig() {
+    }
+
+    static BinaryCodec codec(Map<String, ?> configs) {
+        // A file of each service's own would number the schemas differently, so there is no default to fall back on
+        Object path = configs.get(SCHEMA_REGISTRY_PATH);
+        if (path == null || path.toString().isBlank()) {
+            throw new ConfigException(SCHEMA_REGISTRY_PATH + " is required: the schema registry file every producer and consumer shares");
+        }
+        return new BinaryCodec(FileSchemaRegistry.at(Path.of(path.toString())));
+    }
+
+}
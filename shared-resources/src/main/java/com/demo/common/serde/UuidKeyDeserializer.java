@@ -0,0 +1,23 @@
+package com.demo.common.serde;
+
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Reads the keys written by {@link UuidKeySerializer} as well as plain UTF-8 ones, so it can replace StringDeserializer
+ * before the producers switch. A 16-byte key is taken for a binary UUID (the text keys here are never 16 characters long).
+ */
+public class UuidKeyDeserializer implements Deserializer<String> {
+
+    @Override
+    public String deserialize(String topic, byte[] data) {
+        if (data == null) return null;
+        if (data.length != UuidKeySerializer.UUID_LENGTH) return new String(data, StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        return new UUID(buffer.getLong(), buffer.getLong()).toString();
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.demo.common.serde;
+
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Writes the record keys, which are UUIDs in text form, as their 16 bytes instead of 36 characters.
+ * Other keys are written as UTF-8. The bytes decide the partition, so switch all the producers of a topic at once
+ * (after the consumers moved to {@link UuidKeyDeserializer}), or the records of a key may end up on two partitions.
+ */
+public class UuidKeySerializer implements Serializer<String> {
+
+    static final int UUID_LENGTH = 16;
+
+    @Override
+    public byte[] serialize(String topic, String key) {
+        if (key == null) return null;
+        UUID uuid = parse(key);
+        if (uuid == null) return key.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(UUID_LENGTH)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    private static UUID parse(String key) {
+        if (key.length() != 36) return null;
+        try {
+            return UUID.fromString(key);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+}
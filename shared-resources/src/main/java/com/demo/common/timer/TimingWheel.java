@@ -0,0 +1,184 @@
+package com.demo.common.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel: each level is a ring of buckets, one per tick, and each level's tick is a whole turn of the level below.
+ * A timeout goes to the lowest level whose turn reaches its deadline; when the clock enters one of its higher-level buckets,
+ * the bucket's timeouts move down, until they expire from the lowest level. Levels are added as far deadlines need them.
+ * Scheduling and cancelling are O(1) (buckets are doubly linked lists), and so is each timeout's expiry, amortized over the
+ * at most one move per level. Deadlines are rounded down to the tick: timeouts expire up to a tick early.
+ * Not thread-safe.
+ */
+public class TimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    // Lowest level first
+    private final List<Level<T>> levels = new ArrayList<>();
+    // Timeouts scheduled past their deadline, expired by the next advance()
+    private final Bucket<T> due = new Bucket<>();
+    private long currentTime;
+    private int size;
+
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize < 2) throw new IllegalArgumentException("Tick must be positive and the wheel at least 2 buckets");
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.currentTime = startMs - startMs % tickMs;
+        this.levels.add(new Level<>(tickMs, wheelSize));
+    }
+
+    public Timeout<T> schedule(T value, long deadline) {
+        Timeout<T> timeout = new Timeout<>(value, deadline);
+        this.add(timeout);
+        this.size++;
+        return timeout;
+    }
+
+    /**
+     * @return false if the timeout had expired or been cancelled already
+     */
+    public boolean cancel(Timeout<T> timeout) {
+        if (timeout.bucket == null) return false;
+        timeout.bucket.remove(timeout);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Moves the clock to now, tick by tick.
+     * @return the values of the timeouts that expired
+     */
+    public List<T> advance(long now) {
+        List<T> expired = new ArrayList<>();
+        this.drain(this.due, expired);
+        while (this.currentTime + this.tickMs <= now) {
+            this.currentTime += this.tickMs;
+            // 1. Higher levels first: the buckets the clock enters move their timeouts down (or out, if they are due)
+            for (int i = this.levels.size() - 1; i > 0; i--) {
+                Level<T> level = this.levels.get(i);
+                if (this.currentTime % level.tickMs != 0) continue;
+                Bucket<T> bucket = level.bucket(this.currentTime);
+                Timeout<T> timeout;
+                while ((timeout = bucket.poll()) != null) this.add(timeout);
+            }
+            // 2. Then the lowest level's bucket for this tick, which the moved timeouts may have joined
+            this.drain(this.levels.get(0).bucket(this.currentTime), expired);
+            this.drain(this.due, expired);
+        }
+        return expired;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    private void add(Timeout<T> timeout) {
+        // 1. Due already
+        if (timeout.deadline < this.currentTime + this.tickMs) {
+            this.due.add(timeout);
+            return;
+        }
+        // 2. The lowest level whose turn, from the current bucket on, reaches the deadline
+        for (int i = 0; ; i++) {
+            if (i == this.levels.size()) {
+                long tickMs = this.levels.get(i - 1).tickMs;
+                if (tickMs > Long.MAX_VALUE / this.wheelSize / this.wheelSize) throw new IllegalArgumentException("Deadline too far: " + timeout.deadline);
+                this.levels.add(new Level<>(tickMs * this.wheelSize, this.wheelSize));
+            }
+            Level<T> level = this.levels.get(i);
+            long levelTime = this.currentTime - this.currentTime % level.tickMs;
+            if (timeout.deadline < levelTime + level.tickMs * this.wheelSize) {
+                level.bucket(timeout.deadline).add(timeout);
+                return;
+            }
+        }
+    }
+
+    private void drain(Bucket<T> bucket, List<T> expired) {
+        Timeout<T> timeout;
+        while ((timeout = bucket.poll()) != null) {
+            expired.add(timeout.value);
+            this.size--;
+        }
+    }
+
+    public static final class Timeout<T> {
+
+        private final T value;
+        private final long deadline;
+        private Bucket<T> bucket;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        private Timeout(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        public T value() {
+            return this.value;
+        }
+
+        public long deadline() {
+            return this.deadline;
+        }
+
+    }
+
+    private static final class Level<T> {
+
+        private final long tickMs;
+        private final Bucket<T>[] buckets;
+
+        @SuppressWarnings("unchecked")
+        private Level(long tickMs, int wheelSize) {
+            this.tickMs = tickMs;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) this.buckets[i] = new Bucket<>();
+        }
+
+        private Bucket<T> bucket(long time) {
+            return this.buckets[(int) ((time / this.tickMs) % this.buckets.length)];
+        }
+
+    }
+
+    // Doubly linked list of timeouts around a sentinel
+    private static final class Bucket<T> {
+
+        private final Timeout<T> head = new Timeout<>(null, 0);
+
+        private Bucket() {
+            this.head.previous = this.head;
+            this.head.next = this.head;
+        }
+
+        private void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.previous = this.head.previous;
+            timeout.next = this.head;
+            this.head.previous.next = timeout;
+            this.head.previous = timeout;
+        }
+
+        private void remove(Timeout<T> timeout) {
+            timeout.previous.next = timeout.next;
+            timeout.next.previous = timeout.previous;
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        private Timeout<T> poll() {
+            Timeout<T> first = this.head.next;
+            if (first == this.head) return null;
+            this.remove(first);
+            return first;
+        }
+
+    }
+
+}
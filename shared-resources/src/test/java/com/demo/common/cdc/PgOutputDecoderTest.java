@@ -0,0 +1,121 @@
+package com.demo.common.cdc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PgOutputDecoderTest {
+
+    private final PgOutputDecoder decoder = new PgOutputDecoder();
+
+    @Test
+    void decodesATransactionWithAnInsert() throws IOException {
+        PgOutputMessage.Begin begin = (PgOutputMessage.Begin) this.decoder.decode(message(out -> {
+            out.writeByte('B');
+            out.writeLong(0x16B3748L);
+            out.writeLong(1_000_000L); // 1s after the Postgres epoch
+            out.writeInt(742);
+        }));
+        assertEquals(0x16B3748L, begin.finalLsn());
+        assertEquals(Instant.parse("2000-01-01T00:00:01Z"), begin.commitTime());
+        assertEquals(742, begin.xid());
+
+        PgOutputMessage.Relation relation = (PgOutputMessage.Relation) this.decoder.decode(message(out -> {
+            out.writeByte('R');
+            out.writeInt(16384);
+            cString(out, "public");
+            cString(out, "outbox_events");
+            out.writeByte('d');
+            out.writeShort(3);
+            for (String column : new String[]{"id", "topic", "payload"}) {
+                out.writeByte(0);
+                cString(out, column);
+                out.writeInt(25);
+                out.writeInt(-1);
+            }
+        }));
+        assertEquals("outbox_events", relation.name());
+        assertEquals(List.of("id", "topic", "payload"), relation.columns());
+
+        PgOutputMessage.Insert insert = (PgOutputMessage.Insert) this.decoder.decode(message(out -> {
+            out.writeByte('I');
+            out.writeInt(16384);
+            out.writeByte('N');
+            out.writeShort(3);
+            text(out, "5f1c1d4e-0000-0000-0000-000000000001");
+            text(out, "order-events-topic");
+            out.writeByte('n');
+        }));
+        assertSame(relation, insert.relation());
+        assertEquals("order-events-topic", insert.values().get("topic"));
+        assertTrue(insert.values().containsKey("payload"));
+        assertNull(insert.values().get("payload"));
+
+        PgOutputMessage.Commit commit = (PgOutputMessage.Commit) this.decoder.decode(message(out -> {
+            out.writeByte('C');
+            out.writeByte(0);
+            out.writeLong(0x16B3700L);
+            out.writeLong(0x16B3748L);
+            out.writeLong(2_000_000L);
+        }));
+        assertEquals(0x16B3748L, commit.endLsn());
+    }
+
+    @Test
+    void reportsOtherMessagesByTag() throws IOException {
+        PgOutputMessage message = this.decoder.decode(message(out -> {
+            out.writeByte('T');
+            out.writeInt(0);
+        }));
+        assertEquals(new PgOutputMessage.Other('T'), message);
+    }
+
+    @Test
+    void rejectsInsertsIntoUnknownRelations() throws IOException {
+        ByteBuffer insert = message(out -> {
+            out.writeByte('I');
+            out.writeInt(99);
+            out.writeByte('N');
+            out.writeShort(0);
+        });
+        assertThrows(IllegalStateException.class, () -> this.decoder.decode(insert));
+    }
+
+    @Test
+    void decodesHexBytea() {
+        assertArrayEquals(new byte[]{1, (byte) 0xff, 0x7a}, PgOutputDecoder.bytea("\\x01ff7a"));
+        assertNull(PgOutputDecoder.bytea(null));
+        assertThrows(IllegalArgumentException.class, () -> PgOutputDecoder.bytea("\\001"));
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static ByteBuffer message(Writer writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.write(new DataOutputStream(bytes));
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static void cString(DataOutputStream out, String value) throws IOException {
+        out.write(value.getBytes(StandardCharsets.UTF_8));
+        out.writeByte(0);
+    }
+
+    private static void text(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeByte('t');
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
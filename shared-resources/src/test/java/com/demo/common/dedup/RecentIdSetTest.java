@@ -0,0 +1,72 @@
+package com.demo.common.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecentIdSetTest {
+
+    @Test
+    void remembersAddedIds() {
+        RecentIdSet set = new RecentIdSet(10, 60_000);
+        UUID id = UUID.randomUUID();
+
+        assertTrue(set.add(id, 0));
+        assertFalse(set.add(id, 1));
+        assertTrue(set.contains(id, 2));
+        assertFalse(set.contains(UUID.randomUUID(), 3));
+    }
+
+    @Test
+    void evictsTheOldestIdsBeyondTheMaxSize() {
+        RecentIdSet set = new RecentIdSet(3, 60_000);
+        List<UUID> ids = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        ids.forEach(id -> set.add(id, 0));
+
+        assertEquals(3, set.size());
+        assertFalse(set.contains(ids.get(0), 0));
+        assertTrue(set.contains(ids.get(3), 0));
+    }
+
+    @Test
+    void forgetsIdsOlderThanTheTimeToLive() {
+        RecentIdSet set = new RecentIdSet(10, 1_000);
+        UUID old = UUID.randomUUID();
+        UUID recent = UUID.randomUUID();
+        set.add(old, 0);
+        set.add(recent, 500);
+
+        assertFalse(set.contains(old, 1_000));
+        assertTrue(set.contains(recent, 1_000));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    void agreesWithAHashSetUnderChurn() {
+        RecentIdSet set = new RecentIdSet(64, Long.MAX_VALUE);
+        Random random = new Random(42);
+        List<UUID> window = new ArrayList<>();
+        Set<UUID> expected = new HashSet<>();
+        // Sequential ids collide a lot more than random ones
+        for (long i = 0; i < 10_000; i++) {
+            UUID id = new UUID(i % 7, random.nextInt(200));
+            boolean added = set.add(id, i);
+            assertEquals(expected.add(id), added);
+            if (added) {
+                window.add(id);
+                if (window.size() > 64) expected.remove(window.remove(0));
+            }
+            for (UUID probe : List.of(id, new UUID(i % 7, random.nextInt(200)))) {
+                assertEquals(expected.contains(probe), set.contains(probe, i));
+            }
+        }
+    }
+
+}
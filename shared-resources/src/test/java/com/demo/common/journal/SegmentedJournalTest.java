@@ -0,0 +1,150 @@
+package com.demo.common.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedJournalTest {
+
+    private static final int SEGMENT_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackAppendedRecordsAcrossSegments() throws IOException {
+        try (SegmentedJournal journal = this.open()) {
+            for (int i = 0; i < 10; i++) journal.append(bytes("record-" + i));
+
+            assertEquals(List.of("record-0", "record-1", "record-2", "record-3", "record-4",
+                    "record-5", "record-6", "record-7", "record-8", "record-9"), readAll(journal, 0));
+            assertTrue(segmentCount() > 1);
+        }
+    }
+
+    @Test
+    void resumesFromTheAcknowledgedPositionAfterReopening() throws IOException {
+        long next;
+        try (SegmentedJournal journal = this.open()) {
+            journal.append(bytes("first"));
+            journal.append(bytes("second"));
+            next = journal.read(0).nextPosition();
+            journal.acknowledge(next);
+        }
+        try (SegmentedJournal journal = this.open()) {
+            assertEquals(next, journal.acknowledgedPosition());
+            journal.append(bytes("third"));
+
+            assertEquals(List.of("second", "third"), readAll(journal, journal.acknowledgedPosition()));
+        }
+    }
+
+    @Test
+    void ignoresATornRecordWhenReopening() throws IOException {
+        long torn;
+        try (SegmentedJournal journal = this.open()) {
+            journal.append(bytes("kept"));
+            torn = journal.append(bytes("torn"));
+        }
+        // Corrupt the payload of the last record, as if the machine went down halfway through writing it
+        Path segment = this.directory.resolve(String.format("%019d.segment", 0));
+        byte[] content = Files.readAllBytes(segment);
+        content[(int) torn + 8] ^= 0x7F;
+        Files.write(segment, content);
+
+        try (SegmentedJournal journal = this.open()) {
+            assertEquals(torn, journal.writePosition());
+            journal.append(bytes("after"));
+
+            assertEquals(List.of("kept", "after"), readAll(journal, 0));
+        }
+    }
+
+    @Test
+    void tailsAWriterThatLapsRecycledSegments() throws Exception {
+        int records = 20_000;
+        try (SegmentedJournal journal = this.open()) {
+            AtomicReference<Throwable> writerFailure = new AtomicReference<>();
+            Thread writer = new Thread(() -> {
+                try {
+                    long written = 0;
+                    for (int i = 0; i < records; i++) {
+                        // Stay a few segments ahead of the reader, so the same files keep being reused
+                        while (written - journal.acknowledgedPosition() > 4 * SEGMENT_SIZE) Thread.yield();
+                        written = journal.append(bytes("r" + i));
+                    }
+                } catch (Throwable e) {
+                    writerFailure.set(e);
+                }
+            });
+            writer.setDaemon(true);
+            writer.start();
+
+            assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+                long position = 0;
+                for (int i = 0; i < records; i++) {
+                    SegmentedJournal.Entry entry;
+                    while ((entry = journal.read(position)) == null) {
+                        assertNull(writerFailure.get());
+                        Thread.onSpinWait();
+                    }
+                    assertEquals("r" + i, new String(entry.payload(), StandardCharsets.UTF_8));
+                    position = entry.nextPosition();
+                    journal.acknowledge(position);
+                }
+            });
+            writer.join();
+            assertNull(writerFailure.get());
+            assertTrue(segmentCount() <= 8);
+        }
+    }
+
+    @Test
+    void refusesASecondJournalOnTheSameDirectory() throws IOException {
+        try (SegmentedJournal journal = this.open()) {
+            journal.append(bytes("first"));
+
+            assertThrows(IllegalStateException.class, this::open);
+        }
+        // Closing releases it
+        try (SegmentedJournal journal = this.open()) {
+            assertEquals(List.of("first"), readAll(journal, 0));
+        }
+    }
+
+    private SegmentedJournal open() throws IOException {
+        return new SegmentedJournal(this.directory, SEGMENT_SIZE, FsyncPolicy.NEVER, 0);
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(path -> path.toString().endsWith(".segment")).count();
+        }
+    }
+
+    private static List<String> readAll(SegmentedJournal journal, long position) {
+        List<String> records = new ArrayList<>();
+        SegmentedJournal.Entry entry;
+        while ((entry = journal.read(position)) != null) {
+            records.add(new String(entry.payload(), StandardCharsets.UTF_8));
+            position = entry.nextPosition();
+        }
+        return records;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
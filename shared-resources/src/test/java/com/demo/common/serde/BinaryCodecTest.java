@@ -0,0 +1,181 @@
+package com.demo.common.serde;
+
+import com.demo.common.Message;
+import com.demo.common.Type;
+import com.demo.common.dto.AddressDTO;
+import com.demo.common.dto.OrderProductDTO;
+import com.demo.common.event.order.OrderCreatedEvent;
+import com.demo.common.payload.order.OrderCreatedPayload;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripsAMessageWithItsPayload() {
+        BinaryCodec codec = new BinaryCodec(FileSchemaRegistry.at(this.directory.resolve("registry.txt")));
+        OrderCreatedEvent event = orderCreatedEvent();
+
+        byte[] data = codec.encode(event);
+        Message decoded = (Message) codec.decode(data);
+
+        assertTrue(BinaryCodec.isBinary(data));
+        assertInstanceOf(OrderCreatedEvent.class, decoded);
+        assertEquals(event.getId(), decoded.getId());
+        assertEquals(Type.EVENT, decoded.getType());
+        assertEquals(event.getName(), decoded.getName());
+        assertEquals(event.getTimestamp(), decoded.getTimestamp());
+        OrderCreatedPayload payload = (OrderCreatedPayload) decoded.getPayload();
+        OrderCreatedPayload expected = (OrderCreatedPayload) event.getPayload();
+        assertEquals(expected.getOrderId(), payload.getOrderId());
+        assertEquals(0, expected.getTotalAmount().compareTo(payload.getTotalAmount()));
+        assertEquals(2, payload.getProducts().size());
+        assertEquals(expected.getProducts().get(1).getProductId(), payload.getProducts().get(1).getProductId());
+        assertEquals(expected.getShippingAddress().getCity(), payload.getShippingAddress().getCity());
+        assertNull(payload.getPaymentMethodId());
+    }
+
+    @Test
+    void readsWithTheSchemasRegisteredByAnotherProcess() {
+        Path file = this.directory.resolve("shared.txt");
+        OrderCreatedEvent event = orderCreatedEvent();
+
+        byte[] data = new BinaryCodec(FileSchemaRegistry.at(file)).encode(event);
+        // A fresh registry instance, like the one of a consumer, only knows the file
+        Path copy = this.directory.resolve("copy.txt");
+        copyRegistry(file, copy, line -> line);
+        Message decoded = (Message) new BinaryCodec(FileSchemaRegistry.at(copy)).decode(data);
+
+        assertEquals(event.getId(), decoded.getId());
+    }
+
+    @Test
+    void reusesTheIdOfAnIdenticalSchema() {
+        Path file = this.directory.resolve("registry.txt");
+        Schema schema = FileSchemaRegistry.at(file).register(OrderCreatedPayload.class);
+
+        assertEquals(schema, FileSchemaRegistry.at(file).register(OrderCreatedPayload.class));
+        assertEquals(schema, FileSchemaRegistry.at(file).lookup(schema.id()));
+    }
+
+    @Test
+    void skipsRemovedFieldsAndLeavesNewOnesEmpty() {
+        Path file = this.directory.resolve("registry.txt");
+        OldVersion old = new OldVersion();
+        old.id = UUID.randomUUID();
+        old.dropped = List.of("a", "b");
+        old.kept = "kept";
+
+        byte[] data = new BinaryCodec(FileSchemaRegistry.at(file)).encode(old);
+        // The writer's schema, as the newer reader class sees it
+        Path newer = this.directory.resolve("newer.txt");
+        copyRegistry(file, newer, line -> line.replace(OldVersion.class.getName(), NewVersion.class.getName()));
+        NewVersion decoded = (NewVersion) new BinaryCodec(FileSchemaRegistry.at(newer)).decode(data);
+
+        assertEquals(old.id, decoded.id);
+        assertEquals("kept", decoded.kept);
+        assertNull(decoded.added);
+    }
+
+    @Test
+    void isMuchSmallerThanJson() {
+        BinaryCodec codec = new BinaryCodec(FileSchemaRegistry.at(this.directory.resolve("registry.txt")));
+
+        byte[] data = codec.encode(orderCreatedEvent());
+
+        // No field names, 16-byte UUIDs, varint numbers: JSON takes several times as much for the same event
+        assertTrue(data.length < 250, "Encoded in " + data.length + " bytes");
+    }
+
+    @Test
+    void leavesJsonAlone() {
+        assertFalse(BinaryCodec.isBinary("{\"id\":1}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(BinaryCodec.isBinary(new byte[0]));
+        assertFalse(BinaryCodec.isBinary(null));
+    }
+
+    @Test
+    void rejectsARecordWrittenWithAnotherRegistry() {
+        OrderCreatedEvent event = orderCreatedEvent();
+        byte[] data = new BinaryCodec(FileSchemaRegistry.at(this.directory.resolve("producer.txt"))).encode(event);
+        RecordHeaders headers = new RecordHeaders();
+        MessageHeaders.stamp(headers, event);
+        // The consumer's own file gave the producer's ID to another class
+        Path other = this.directory.resolve("consumer.txt");
+        FileSchemaRegistry.at(other).register(OldVersion.class);
+
+        try (MixedMessageDeserializer deserializer = new MixedMessageDeserializer()) {
+            deserializer.configure(Map.of(SerdeConfig.SCHEMA_REGISTRY_PATH, other.toString(),
+                    SerdeConfig.JSON_DELEGATE_CLASS, StringDeserializer.class.getName()), false);
+
+            assertThrows(SerializationException.class, () -> deserializer.deserialize("orders", headers, data));
+        }
+    }
+
+    @Test
+    void requiresTheRegistryPath() {
+        try (MixedMessageDeserializer deserializer = new MixedMessageDeserializer()) {
+            assertThrows(ConfigException.class, () -> deserializer.configure(Map.of(), false));
+        }
+    }
+
+    private static OrderCreatedEvent orderCreatedEvent() {
+        OrderCreatedEvent event = new OrderCreatedEvent();
+        event.setId(UUID.randomUUID());
+        event.setType(Type.EVENT);
+        event.setName("ORDER_CREATED");
+        event.setTimestamp(Instant.now());
+        event.setCorrelationId(UUID.randomUUID());
+        OrderCreatedPayload payload = new OrderCreatedPayload();
+        payload.setOrderId(event.getCorrelationId());
+        payload.setCustomerId(UUID.randomUUID());
+        payload.setProducts(List.of(new OrderProductDTO(UUID.randomUUID(), 2, new BigDecimal("19.99")),
+                new OrderProductDTO(UUID.randomUUID(), 1, new BigDecimal("5.00"))));
+        payload.setShippingAddress(new AddressDTO("1 Main St", "1000", "Sofia", "BG"));
+        payload.setTotalAmount(new BigDecimal("44.98"));
+        payload.setCurrency("EUR");
+        event.setPayload(payload);
+        return event;
+    }
+
+    private static void copyRegistry(Path from, Path to, UnaryOperator<String> edit) {
+        try {
+            Files.write(to, Files.readAllLines(from).stream().map(edit).toList());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static class OldVersion {
+        UUID id;
+        List<String> dropped;
+        String kept;
+    }
+
+    static class NewVersion {
+        UUID id;
+        String kept;
+        Integer added;
+    }
+
+}
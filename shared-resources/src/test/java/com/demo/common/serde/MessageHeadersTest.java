@@ -0,0 +1,59 @@
+package com.demo.common.serde;
+
+import com.demo.common.Type;
+import com.demo.common.command.shipment.ArrangeShipmentCommand;
+import com.demo.common.constant.Commands;
+import com.demo.common.constant.Events;
+import com.demo.common.event.order.OrderCreatedEvent;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageHeadersTest {
+
+    @Test
+    void readsBackWhatWasStamped() {
+        OrderCreatedEvent event = new OrderCreatedEvent();
+        event.setId(UUID.randomUUID());
+        event.setType(Type.EVENT);
+        event.setName(Events.ORDER_CREATED);
+        event.setTimestamp(Instant.now());
+        event.setCorrelationId(UUID.randomUUID());
+        RecordHeaders headers = new RecordHeaders();
+
+        MessageHeaders.stamp(headers, event);
+        MessageHeaders.stamp(headers, event);
+        MessageHeaders.Metadata metadata = MessageHeaders.read(headers);
+
+        assertEquals(event.getId(), metadata.id());
+        assertEquals(Type.EVENT, metadata.type());
+        assertEquals(event.getCorrelationId(), metadata.correlationId());
+        assertEquals(MessageHeaders.CURRENT_SCHEMA_VERSION, metadata.schemaVersion());
+        assertEquals(OrderCreatedEvent.class, metadata.messageClass());
+        assertEquals(5, headers.toArray().length, "Stamping again replaces the values");
+    }
+
+    @Test
+    void derivesTheNameAndTypeOfSerializedMessagesFromTheirClass() {
+        RecordHeaders headers = new RecordHeaders();
+        String correlationId = UUID.randomUUID().toString();
+
+        MessageHeaders.stamp(headers, null, ArrangeShipmentCommand.class.getName(), correlationId);
+        MessageHeaders.Metadata metadata = MessageHeaders.read(headers);
+
+        assertNull(metadata.id());
+        assertEquals(Type.COMMAND, metadata.type());
+        assertEquals(Commands.ARRANGE_SHIPMENT, metadata.name());
+        assertEquals(ArrangeShipmentCommand.class, metadata.messageClass());
+    }
+
+    @Test
+    void returnsNothingForRecordsWithoutThem() {
+        assertNull(MessageHeaders.read(new RecordHeaders()));
+    }
+
+}
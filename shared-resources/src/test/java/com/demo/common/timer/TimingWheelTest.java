@@ -0,0 +1,84 @@
+package com.demo.common.timer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    @Test
+    void expiresTimeoutsOnceTheClockReachesTheirTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        wheel.schedule("a", 25);
+        wheel.schedule("b", 40);
+
+        assertEquals(List.of(), wheel.advance(19));
+        assertEquals(List.of("a"), wheel.advance(20));
+        assertEquals(List.of(), wheel.advance(39));
+        assertEquals(List.of("b"), wheel.advance(45));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void movesFarTimeoutsDownTheLevels() {
+        // Level 0 spans 80ms, level 1 640ms, level 2 5120ms
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        wheel.schedule("level 1", 500);
+        wheel.schedule("level 2", 3_000);
+
+        assertEquals(List.of(), wheel.advance(499));
+        assertEquals(List.of("level 1"), wheel.advance(500));
+        assertEquals(List.of(), wheel.advance(2_999));
+        assertEquals(List.of("level 2"), wheel.advance(3_000));
+    }
+
+    @Test
+    void expiresPastDeadlinesOnTheNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 1_000);
+        wheel.schedule("late", 500);
+
+        assertEquals(1, wheel.size());
+        assertEquals(List.of("late"), wheel.advance(1_000));
+    }
+
+    @Test
+    void cancelledTimeoutsNeverExpire() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 300);
+        wheel.schedule("kept", 300);
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+        assertEquals(List.of("kept"), wheel.advance(1_000));
+    }
+
+    @Test
+    void expiresEveryTimeoutWithinATickOfItsDeadline() {
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 16, 0);
+        Random random = new Random(42);
+        Map<Long, Integer> remaining = new HashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            long deadline = random.nextInt(1_000_000);
+            wheel.schedule(deadline, deadline);
+            remaining.merge(deadline, 1, Integer::sum);
+        }
+        List<Long> late = new ArrayList<>();
+        for (long now = 0; now <= 1_000_000; now += 7) {
+            for (long deadline : wheel.advance(now)) {
+                if (deadline >= now + 10 || deadline < now - 10) late.add(deadline);
+                remaining.merge(deadline, -1, Integer::sum);
+            }
+        }
+
+        assertEquals(List.of(), late);
+        assertTrue(remaining.values().stream().allMatch(count -> count == 0));
+        assertEquals(0, wheel.size());
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.demo.component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Holds a dedicated (non-pooled) connection that LISTENs on the channel notified by the outbox insert trigger (see schema.sql)
+ * and wakes the {@link OutboxPoller} up whenever a notification arrives.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnExpression("${outbox.relay.notify.enabled:true} and '${outbox.relay.engine:polling}' == 'polling'")
+public class OutboxNotificationListener {
+
+    private static final String CHANNEL = "outbox_events";
+
+    private final OutboxPoller outboxPoller;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Value("${outbox.relay.notify.reconnect-delay-ms:5000}")
+    private long reconnectDelayMs;
+
+    private volatile boolean running;
+    private Thread listenerThread;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        this.running = true;
+        this.listenerThread = Thread.ofPlatform().name("outbox-notification-listener").daemon().start(this::listen);
+    }
+
+    @PreDestroy
+    public void stop() {
+        this.running = false;
+        if (this.listenerThread != null) this.listenerThread.interrupt();
+    }
+
+    private void listen() {
+        while (this.running) {
+            try (Connection connection = DriverManager.getConnection(this.url, this.username, this.password)) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                log.info("---> Listening for outbox notifications on {} <---", CHANNEL);
+                // Rows committed while we were not listening would otherwise wait for the fallback poll
+                this.outboxPoller.wakeUp();
+                while (this.running) {
+                    // Blocks until a notification arrives or the timeout elapses
+                    PGNotification[] notifications = pgConnection.getNotifications(10000); // 10s
+                    if (notifications != null && notifications.length > 0) {
+                        this.outboxPoller.wakeUp();
+                    }
+                }
+            } catch (SQLException e) {
+                if (!this.running) return;
+                log.error("---> Outbox notification listener lost its connection, reconnecting <---", e);
+                try {
+                    Thread.sleep(this.reconnectDelayMs);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+}
@@ -24,7 +24,7 @@ import java.util.UUID;
 @Component
 @Slf4j
 @RequiredArgsConstructor
-@KafkaListener(topics = Topics.SHIPMENT_COMMANDS_TOPIC)
+@KafkaListener(topics = Topics.SHIPMENT_COMMANDS_TOPIC, autoStartup = "#{'${kafka.listener.mode:record}' == 'record'}")
 class ShippingCommandsHandler {
 
     private final ShipmentService shipmentService;
@@ -36,7 +36,7 @@ class ShippingCommandsHandler {
     void handle(ArrangeShipmentCommand arrangeShipmentCommand) {
         log.info("---> Received ArrangeShipmentCommand <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(arrangeShipmentCommand.getId())) return;
+        if (this.consumedMessageService.isDuplicate(arrangeShipmentCommand)) return;
         // TODO: implement legit shipment arranging solution
         UUID correlationId = arrangeShipmentCommand.getCorrelationId();
         ArrangeShipmentPayload arrangeShipmentPayload = (ArrangeShipmentPayload) arrangeShipmentCommand.getPayload();
@@ -61,7 +61,7 @@ class ShippingCommandsHandler {
     void handle(CancelShipmentCommand cancelShipmentCommand) {
         log.info("---> Received CancelShipmentCommand <---");
         // Idempotency check
-        if (this.consumedMessageService.isDuplicate(cancelShipmentCommand.getId())) return;
+        if (this.consumedMessageService.isDuplicate(cancelShipmentCommand)) return;
         UUID correlationId = cancelShipmentCommand.getCorrelationId();
         CancelShipmentPayload cancelShipmentPayload = (CancelShipmentPayload) cancelShipmentCommand.getPayload();
         UUID shipmentId = cancelShipmentPayload.getShipmentId();
@@ -10,7 +10,9 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "consumed_messages")
+@Table(name = "consumed_messages", indexes = {
+        @Index(name = "idx_consumed_messages_partition_offset", columnList = "topic, kafka_partition, kafka_offset")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -24,4 +26,13 @@ public class ConsumedMessage {
     @Column(nullable = false)
     private Instant timestamp;
 
+    // Where the message was consumed from; the highest offset per partition is its dedup watermark
+    private String topic;
+
+    @Column(name = "kafka_partition")
+    private Integer kafkaPartition;
+
+    @Column(name = "kafka_offset")
+    private Long kafkaOffset;
+
 }
\ No newline at end of file
@@ -2,9 +2,26 @@ package com.demo.repository;
 
 import com.demo.model.ConsumedMessage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.UUID;
 
 @Repository
-public interface ConsumedMessageRepository extends JpaRepository<ConsumedMessage, UUID> {}
+public interface ConsumedMessageRepository extends JpaRepository<ConsumedMessage, UUID> {
+
+    // Returns 0 instead of failing when the message was already recorded.
+    // The key includes the (partition) timestamp, which is the message's own, so a redelivery conflicts with the original
+    @Modifying
+    @Query(value = "INSERT INTO consumed_messages (id, timestamp, topic, kafka_partition, kafka_offset) " +
+            "VALUES (:id, :timestamp, :topic, :partition, :offset) ON CONFLICT (id, timestamp) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("id") UUID id, @Param("timestamp") Instant timestamp,
+                       @Param("topic") String topic, @Param("partition") Integer partition, @Param("offset") Long offset);
+
+    @Query(value = "SELECT max(kafka_offset) FROM consumed_messages WHERE topic = :topic AND kafka_partition = :partition", nativeQuery = true)
+    Long findWatermark(@Param("topic") String topic, @Param("partition") int partition);
+
+}
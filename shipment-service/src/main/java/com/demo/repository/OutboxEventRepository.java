@@ -3,12 +3,57 @@ package com.demo.repository;
 import com.demo.model.OutboxEvent;
 import com.demo.model.Status;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface OutboxEventRepository extends JpaRepository<OutboxEvent, UUID> {
+
     List<OutboxEvent> findByStatus(Status status);
-}
\ No newline at end of file
+
+    // Locks the oldest unclaimed rows (pending ones, and failed ones whose backoff has elapsed);
+    // rows locked by another transaction are skipped instead of waited on
+    @Query(value = "SELECT * FROM outbox_events " +
+            "WHERE (status = 'PENDING_PUBLISHING' OR (status = 'PUBLISHING_FAILED' AND next_attempt_at <= :now)) " +
+            "AND (locked_until IS NULL OR locked_until < :now) " +
+            "ORDER BY timestamp LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxEvent> findClaimable(@Param("now") Instant now, @Param("limit") int limit);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE OutboxEvent o SET o.lockedBy = :owner, o.lockedUntil = :lockedUntil, o.leaseEpoch = :epoch, o.attempts = o.attempts + 1 WHERE o.id IN :ids")
+    int lease(@Param("ids") List<UUID> ids, @Param("owner") String owner, @Param("lockedUntil") Instant lockedUntil, @Param("epoch") long epoch);
+
+    // Only touches the rows still held under the given claim
+    @Transactional
+    @Modifying
+    @Query("UPDATE OutboxEvent o SET o.status = :status, o.lockedBy = null, o.lockedUntil = null WHERE o.id IN :ids AND o.lockedBy = :owner AND o.leaseEpoch = :epoch")
+    int release(@Param("ids") Collection<UUID> ids, @Param("owner") String owner, @Param("epoch") long epoch, @Param("status") Status status);
+
+    // Schedules the next attempt with exponential backoff (base * 2^(attempts-1), capped) and 50-100% jitter
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE outbox_events SET status = 'PUBLISHING_FAILED', locked_by = NULL, locked_until = NULL, " +
+            "next_attempt_at = now() + LEAST(:maxDelayMs, :baseDelayMs * power(2, LEAST(attempts, 30) - 1)) * (0.5 + random() / 2) * interval '1 millisecond' " +
+            "WHERE id IN (:ids) AND locked_by = :owner AND lease_epoch = :epoch", nativeQuery = true)
+    int fail(@Param("ids") Collection<UUID> ids, @Param("owner") String owner, @Param("epoch") long epoch,
+             @Param("baseDelayMs") long baseDelayMs, @Param("maxDelayMs") long maxDelayMs);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM OutboxEvent o WHERE o.id IN :ids AND o.lockedBy = :owner AND o.leaseEpoch = :epoch")
+    int deleteClaimed(@Param("ids") Collection<UUID> ids, @Param("owner") String owner, @Param("epoch") long epoch);
+
+    long countByStatus(Status status);
+
+    @Query("SELECT MIN(o.timestamp) FROM OutboxEvent o WHERE o.status IN :statuses")
+    Instant findOldestTimestamp(@Param("statuses") Collection<Status> statuses);
+
+}